@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.engines;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// DelayQueue vs. TimingWheel with a given number of timers already pending.
+// The pending timers are far in the future so that they stay pending for the
+// whole run, the measured batch uses delays of up to a minute like the decay,
+// fight and script timers or no delay at all to measure running due timers.
+// Run with: mvn -Pbenchmark compile exec:exec -Dbenchmark=TimerQueueBenchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerQueueBenchmark {
+    private static final long TICK_MILLIS = 10;
+    private static final int MAX_DELAY = 60 * 1000;
+    private static final int PENDING_DELAY = 24 * 60 * 60 * 1000;
+    private static final int BATCH = 1024;
+
+    @Param({"1000", "100000"})
+    private int pending;
+
+    private DelayQueue<Timer> delayQueue;
+    private TimingWheel wheel;
+    private Timer[] batch, dueBatch;
+    private List<Timer> due;
+    private long now;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Random random = new Random(42);
+        Runnable nothing = () -> { };
+        delayQueue = new DelayQueue<Timer>();
+        now = Timer.getCurrentTicks();
+        wheel = new TimingWheel(TICK_MILLIS, now);
+        for(int i = 0; i < pending; i++) {
+            delayQueue.add(new Timer(PENDING_DELAY + random.nextInt(MAX_DELAY), nothing));
+            wheel.schedule(new Timer(PENDING_DELAY + random.nextInt(MAX_DELAY), nothing));
+        }
+        batch = new Timer[BATCH];
+        dueBatch = new Timer[BATCH];
+        for(int i = 0; i < BATCH; i++) {
+            batch[i] = new Timer(random.nextInt(MAX_DELAY), nothing);
+            dueBatch[i] = new Timer(0, nothing);
+        }
+        due = new ArrayList<Timer>();
+    }
+
+    // e.g. a door that is closed manually before its auto close timer runs
+    @Benchmark
+    public void delayQueueAddRemove() {
+        for(Timer timer : batch) {
+            delayQueue.add(timer);
+        }
+        for(Timer timer : batch) {
+            delayQueue.remove(timer);
+        }
+    }
+
+    @Benchmark
+    public void wheelScheduleCancel() {
+        for(Timer timer : batch) {
+            wheel.schedule(timer);
+        }
+        for(Timer timer : batch) {
+            wheel.cancel(timer);
+        }
+    }
+
+    // the common case: add a timer and let it run, e.g. spells and fight rounds
+    @Benchmark
+    public void delayQueueExpire(Blackhole hole) {
+        for(Timer timer : dueBatch) {
+            delayQueue.add(timer);
+        }
+        Timer timer;
+        while((timer = delayQueue.poll()) != null) {
+            hole.consume(timer);
+        }
+    }
+
+    @Benchmark
+    public void wheelExpire(Blackhole hole) {
+        for(Timer timer : dueBatch) {
+            wheel.schedule(timer);
+        }
+        now += TICK_MILLIS;
+        due.clear();
+        wheel.advance(now, due);
+        hole.consume(due.size());
+    }
+}
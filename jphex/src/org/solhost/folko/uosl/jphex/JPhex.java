@@ -22,6 +22,7 @@ import java.io.*;
 import java.util.logging.*;
 
 import org.solhost.folko.uosl.common.LogFormatter;
+import org.solhost.folko.uosl.jphex.engines.GameLoop;
 import org.solhost.folko.uosl.jphex.engines.TimerQueue;
 import org.solhost.folko.uosl.jphex.network.PacketHandler;
 import org.solhost.folko.uosl.jphex.network.Server;
@@ -33,10 +34,16 @@ import org.solhost.folko.uosl.libuosl.data.SLData;
 
 public class JPhex {
     private static final Logger log = Logger.getLogger("jphex");
+    private static final long TIMER_WHEEL_TICK_MILLIS = 10;
     private World world;
     private Server server;
     private Thread serverThread;
     private PacketHandler handler;
+    private GameLoop gameLoop;
+    private boolean useGameLoop;
+    private boolean useTimerWheel;
+    private int reactorCount = 1;
+    private long dataMillis, scriptMillis;
     private boolean stopped;
 
     public JPhex(Level logLevel) {
@@ -51,24 +58,44 @@ public class JPhex {
         log.info("Copyright 2003-2004, 2013 by Folke Will");
     }
 
+    // run packets and timers on a single fixed-rate game loop thread instead of
+    // handling packets on the network thread and timers on the timer thread
+    public void setUseGameLoop(boolean useGameLoop) {
+        this.useGameLoop = useGameLoop;
+    }
+
+    public void setUseTimerWheel(boolean useTimerWheel) {
+        this.useTimerWheel = useTimerWheel;
+    }
+
+    // number of selector threads for the client connections, more than one
+    // adds a separate acceptor thread
+    public void setReactorCount(int reactorCount) {
+        this.reactorCount = reactorCount;
+    }
+
     public boolean loadData(String dataPath) {
         log.info("Loading client data... ");
+        long startTime = System.currentTimeMillis();
         try {
             SLData.init(dataPath);
         } catch (IOException e) {
             log.log(Level.SEVERE, "Error reading client data: " + e.getMessage(), e);
             return false;
         }
+        dataMillis = System.currentTimeMillis() - startTime;
         return true;
     }
 
     private boolean loadScripts(String path) {
+        long startTime = System.currentTimeMillis();
         try {
             ScriptManager.init(path);
         } catch(Exception e) {
             log.log(Level.SEVERE, "Couldn't compile scripts: " + e.getMessage(), e);
             return false;
         }
+        scriptMillis = System.currentTimeMillis() - startTime;
         return true;
     }
 
@@ -78,8 +105,15 @@ public class JPhex {
             world = World.loadOrCreateNew(savePath);
             ScriptAPI api = new ScriptAPIImpl(world);
             ScriptManager.instance().setGlobal("$api", api);
-            TimerQueue.start();
+            if(useGameLoop) {
+                TimerQueue.startTicked(GameLoop.DEFAULT_TICK_MILLIS);
+            } else if(useTimerWheel) {
+                TimerQueue.startWheel(TIMER_WHEEL_TICK_MILLIS);
+            } else {
+                TimerQueue.start();
+            }
             world.init();
+            log.info(String.format("Startup: data files %d ms, scripts %d ms, %s", dataMillis, scriptMillis, world.getLoadTimings()));
             return true;
         } catch (Exception e) {
             log.log(Level.SEVERE, "Couldn't initialize world: " + e.getMessage(), e);
@@ -91,13 +125,16 @@ public class JPhex {
         log.info("Starting network on port " + port + "... ");
         this.handler = new PacketHandler(world);
 
-        server = new Server(port, handler);
+        server = new Server(port, handler, reactorCount);
         try {
             server.listen();
         } catch (IOException e) {
             log.log(Level.SEVERE, "Error listening: " + e.getMessage(), e);
             return false;
         }
+        if(useGameLoop) {
+            gameLoop = new GameLoop(server, GameLoop.DEFAULT_TICK_MILLIS);
+        }
         serverThread = new Thread() {
             @Override
             public void run() {
@@ -113,6 +150,10 @@ public class JPhex {
     }
 
     public void startEventLoop() {
+        if(gameLoop != null) {
+            // must be running before the first packet arrives
+            gameLoop.start();
+        }
         serverThread.start();
         log.info("JPhex running...");
     }
@@ -121,8 +162,15 @@ public class JPhex {
         world.save();
     }
 
+    public void saveInBackground() {
+        world.saveInBackground();
+    }
+
     public void halt() {
         log.info("Shutting down...");
+        if(gameLoop != null) {
+            gameLoop.stop();
+        }
         TimerQueue.stop();
         if(serverThread != null) {
             serverThread.interrupt();
@@ -132,15 +180,37 @@ public class JPhex {
                 // don't care as we were killing it anyways
             }
         }
+        if(world != null) {
+            // nothing changes the world anymore, write the rest of the journal
+            world.shutdown();
+        }
         stopped = true;
     }
 
+    public String getTickStats() {
+        String worldStats = "items pending decay: " + world.getPendingDecayCount() + ", last save: " + world.getLastSaveStats()
+                + ", journal bytes written: " + world.getJournalBytesWritten() + ", objects known by clients: " + world.getKnownObjectCount();
+        if(gameLoop == null) {
+            return "Game loop not enabled, " + worldStats;
+        }
+        return gameLoop.getStats().toString() + ", " + server.getFlushStats() + ", " + worldStats;
+    }
+
     public boolean isStopped() {
         return stopped;
     }
 
     public static void main(String[] args) throws IOException {
         JPhex phex = new JPhex(Level.INFO);
+        for(String arg : args) {
+            if(arg.equals("--gameloop")) {
+                phex.setUseGameLoop(true);
+            } else if(arg.equals("--timerwheel")) {
+                phex.setUseTimerWheel(true);
+            } else if(arg.startsWith("--reactors=")) {
+                phex.setReactorCount(Integer.parseInt(arg.substring("--reactors=".length())));
+            }
+        }
         if(!phex.loadData("data/")) {
             phex.halt();
             return;
@@ -165,12 +235,14 @@ public class JPhex {
             String line = console.readLine();
             if(line == null) break;
             if(line.equals("save")) {
-                phex.save();
+                phex.saveInBackground();
             } else if(line.equals("quit")) {
                 phex.save();
                 phex.halt();
             } else if(line.equals("halt")) {
                 phex.halt();
+            } else if(line.equals("stats")) {
+                log.info(phex.getTickStats());
             }
         }
     }
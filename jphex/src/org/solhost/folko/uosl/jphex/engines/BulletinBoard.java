@@ -18,11 +18,14 @@
  ******************************************************************************/
 package org.solhost.folko.uosl.jphex.engines;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.solhost.folko.uosl.jphex.types.Player;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.network.packets.BoardPostPacket;
 import org.solhost.folko.uosl.libuosl.network.packets.BoardSubjectPacket;
 
@@ -67,4 +70,25 @@ public class BulletinBoard implements Serializable {
         player.sendPacket(packet);
         return;
     }
+
+    public synchronized void writeFields(SaveOutput out) throws IOException {
+        out.writeInt(posts.size());
+        for(Post post : posts) {
+            out.writeString(post.author);
+            out.writeString(post.subject);
+            out.writeString(post.message);
+        }
+    }
+
+    public synchronized void readFields(SaveInput in) throws IOException {
+        posts.clear();
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            Post post = new Post();
+            post.author = in.readString();
+            post.subject = in.readString();
+            post.message = in.readString();
+            posts.add(post);
+        }
+    }
 }
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.engines;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.solhost.folko.uosl.jphex.network.Server;
+
+// Fixed-rate game loop: each tick handles all received packets, runs the due timers
+// and then flushes the outgoing data of all clients, all on one thread so that the
+// world sees a deterministic order of events.
+public class GameLoop {
+    public static final int DEFAULT_TICK_MILLIS = 50;
+    private static final Logger log = Logger.getLogger("jphex.gameloop");
+    private final Server server;
+    private final long tickMillis;
+    private final Thread loopThread;
+    private final TickStats stats;
+    private volatile boolean wantStop;
+
+    // timings of the phases, in microseconds
+    public static class TickStats {
+        private long ticks, overruns;
+        private long lastInbound, lastTimers, lastOutbound;
+        private long maxInbound, maxTimers, maxOutbound, maxTotal;
+        private long sumTotal;
+        private long packets, timers;
+
+        private synchronized void record(long inbound, long timerTime, long outbound, int packetCount, int timerCount, boolean overrun) {
+            ticks++;
+            lastInbound = inbound;
+            lastTimers = timerTime;
+            lastOutbound = outbound;
+            maxInbound = Math.max(maxInbound, inbound);
+            maxTimers = Math.max(maxTimers, timerTime);
+            maxOutbound = Math.max(maxOutbound, outbound);
+            long total = inbound + timerTime + outbound;
+            maxTotal = Math.max(maxTotal, total);
+            sumTotal += total;
+            packets += packetCount;
+            timers += timerCount;
+            if(overrun) {
+                overruns++;
+            }
+        }
+
+        public synchronized long getTicks() {
+            return ticks;
+        }
+
+        public synchronized long getOverruns() {
+            return overruns;
+        }
+
+        @Override
+        public synchronized String toString() {
+            long avg = ticks > 0 ? sumTotal / ticks : 0;
+            return String.format("%d ticks, %d overruns, %d packets, %d timers; "
+                    + "last us: in %d, timers %d, out %d; max us: in %d, timers %d, out %d, total %d; avg total %d us",
+                    ticks, overruns, packets, timers,
+                    lastInbound, lastTimers, lastOutbound,
+                    maxInbound, maxTimers, maxOutbound, maxTotal, avg);
+        }
+    }
+
+    public GameLoop(Server server, long tickMillis) {
+        if(!TimerQueue.get().isTicked()) {
+            throw new IllegalStateException("game loop requires a ticked timer queue");
+        }
+        this.server = server;
+        this.tickMillis = tickMillis;
+        this.stats = new TickStats();
+        this.loopThread = new Thread("GameLoop") {
+            @Override
+            public void run() {
+                loop();
+            }
+        };
+    }
+
+    public void start() {
+        server.setGameLoopMode(true);
+        loopThread.start();
+    }
+
+    public void stop() {
+        wantStop = true;
+        loopThread.interrupt();
+        try {
+            loopThread.join();
+        } catch (InterruptedException e) {
+            // doesn't matter as we're stopping anyways
+        }
+    }
+
+    public TickStats getStats() {
+        return stats;
+    }
+
+    private void loop() {
+        log.fine("GameLoop active with " + tickMillis + " ms ticks");
+        long nextTick = System.currentTimeMillis();
+        while(!wantStop) {
+            try {
+                tick();
+            } catch(Exception e) {
+                log.log(Level.SEVERE, "Exception in game loop: " + e, e);
+            }
+
+            nextTick += tickMillis;
+            long sleep = nextTick - System.currentTimeMillis();
+            if(sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if(wantStop) {
+                        break;
+                    }
+                }
+            } else if(-sleep >= tickMillis) {
+                // way behind, don't try to catch up with a burst of ticks
+                nextTick = System.currentTimeMillis();
+            }
+        }
+        log.fine("GameLoop inactive");
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        int packetCount = server.dispatchEvents();
+        long afterInbound = System.nanoTime();
+        int timerCount = TimerQueue.get().runDueTimers();
+        long afterTimers = System.nanoTime();
+        server.flushWrites();
+        long end = System.nanoTime();
+
+        long totalMillis = (end - start) / 1000000;
+        boolean overrun = totalMillis > tickMillis;
+        if(overrun) {
+            log.fine(String.format("Tick overrun: %d ms for %d packets and %d timers", totalMillis, packetCount, timerCount));
+        }
+        stats.record((afterInbound - start) / 1000, (afterTimers - afterInbound) / 1000, (end - afterTimers) / 1000,
+                packetCount, timerCount, overrun);
+    }
+}
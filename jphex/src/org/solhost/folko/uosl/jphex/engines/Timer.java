@@ -25,6 +25,11 @@ public class Timer implements Delayed {
     private final Runnable what;
     private final long delay;
     private long when;
+    private volatile boolean cancelled;
+
+    // bookkeeping of TimingWheel, only used by the thread that runs the timers
+    Timer wheelNext, wheelPrev;
+    int wheelLevel = -1, wheelSlot;
 
     // call in n milliseconds
     public Timer(long milliseconds, Runnable what) {
@@ -38,6 +43,8 @@ public class Timer implements Delayed {
         return System.currentTimeMillis();
     }
 
+    // restarts the delay from now, only call it while the timer isn't scheduled,
+    // e.g. from its own runnable or after cancel(), and add it again afterwards
     public void reset() {
         this.when = getCurrentTicks() + delay;
     }
@@ -46,6 +53,24 @@ public class Timer implements Delayed {
         what.run();
     }
 
+    // absolute time in ticks when this timer expires
+    long getDeadline() {
+        return when;
+    }
+
+    // the timer won't run unless it's added again
+    public void cancel() {
+        TimerQueue.get().cancelTimer(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
     @Override
     public long getDelay(TimeUnit unit) {
         long delta = when - getCurrentTicks();
@@ -54,6 +79,10 @@ public class Timer implements Delayed {
 
     @Override
     public int compareTo(Delayed o) {
+        if(o instanceof Timer) {
+            // avoid asking the clock for each comparison
+            return Long.compare(when, ((Timer) o).when);
+        }
         long delta = this.getDelay(TimeUnit.MILLISECONDS) - o.getDelay(TimeUnit.MILLISECONDS);
         if(delta > 0) {
             // We should expire later
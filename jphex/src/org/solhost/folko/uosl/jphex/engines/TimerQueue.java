@@ -18,12 +18,23 @@
  ******************************************************************************/
 package org.solhost.folko.uosl.jphex.engines;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.DelayQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+// Runs timers with one of these backends:
+//  - start: DelayQueue on its own thread, O(log n) per timer
+//  - startWheel: hierarchical TimingWheel on its own thread, O(1) per timer
+//  - startTicked: TimingWheel that is advanced by the GameLoop via runDueTimers
 public class TimerQueue {
     private final DelayQueue<Timer> timers;
+    private final TimingWheel wheel;
+    private final Queue<Timer> changedTimers;
+    private final List<Timer> dueTimers;
     private static final Logger log = Logger.getLogger("jphex.timerqueue");
     private static TimerQueue instance;
     private final Thread timerThread;
@@ -32,6 +43,17 @@ public class TimerQueue {
     private TimerQueue() {
         this.timers = new DelayQueue<Timer>();
         this.timerThread = getTimerThread();
+        this.wheel = null;
+        this.changedTimers = null;
+        this.dueTimers = null;
+    }
+
+    private TimerQueue(long tickMillis, boolean ownThread) {
+        this.timers = null;
+        this.wheel = new TimingWheel(tickMillis, Timer.getCurrentTicks());
+        this.changedTimers = new ConcurrentLinkedQueue<Timer>();
+        this.dueTimers = new ArrayList<Timer>();
+        this.timerThread = ownThread ? getWheelThread() : null;
     }
 
     public static TimerQueue get() {
@@ -50,6 +72,25 @@ public class TimerQueue {
         instance.startTimerThread();
     }
 
+    // timing wheel on its own thread, timers run with a granularity of tickMillis
+    public static void startWheel(long tickMillis) {
+        if(instance != null) {
+            log.severe("timer queue initialized twice");
+            return;
+        }
+        instance = new TimerQueue(tickMillis, true);
+        instance.startTimerThread();
+    }
+
+    // timers won't run on their own, the game loop must call runDueTimers
+    public static void startTicked(long tickMillis) {
+        if(instance != null) {
+            log.severe("timer queue initialized twice");
+            return;
+        }
+        instance = new TimerQueue(tickMillis, false);
+    }
+
     public static void stop() {
         if(instance == null) {
             return;
@@ -57,16 +98,84 @@ public class TimerQueue {
         instance.wantStop = true;
         if(instance.timerThread != null) {
             instance.timerThread.interrupt();
+            try {
+                instance.timerThread.join();
+            } catch (InterruptedException e) {
+                // doesn't matter as we're stopping anyways
+            }
+        }
+    }
+
+    public boolean isTicked() {
+        return wheel != null && timerThread == null;
+    }
+
+    // returns the timer so that it can be cancelled. The deadline is kept: a timer that is added
+    // again after it ran or was cancelled fires at its old deadline unless reset() was called first
+    public Timer addTimer(Timer timer) {
+        timer.setCancelled(false);
+        if(wheel != null) {
+            // can be called from any thread, the wheel itself is only used by the timer thread
+            changedTimers.add(timer);
+        } else {
+            timers.add(timer);
         }
-        try {
-            instance.timerThread.join();
-        } catch (InterruptedException e) {
-            // doesn't matter as we're stopping anyways
+        return timer;
+    }
+
+    public void cancelTimer(Timer timer) {
+        timer.setCancelled(true);
+        if(wheel != null) {
+            changedTimers.add(timer);
+        } else {
+            // O(n), but a timer that was already taken is also skipped by the flag
+            timers.remove(timer);
+        }
+    }
+
+    // game loop mode only: runs all timers that expired until now, returns how many ran
+    public int runDueTimers() {
+        if(!isTicked()) {
+            throw new IllegalStateException("timer queue is not ticked");
+        }
+        return advanceWheel();
+    }
+
+    public int getPendingCount() {
+        if(wheel != null) {
+            return wheel.size() + changedTimers.size();
+        } else {
+            return timers.size();
         }
     }
 
-    public void addTimer(Timer timer) {
-        timers.add(timer);
+    private int advanceWheel() {
+        Timer timer;
+        while((timer = changedTimers.poll()) != null) {
+            if(timer.isCancelled()) {
+                wheel.cancel(timer);
+            } else {
+                wheel.schedule(timer);
+            }
+        }
+
+        dueTimers.clear();
+        wheel.advance(Timer.getCurrentTicks(), dueTimers);
+        int count = 0;
+        for(Timer due : dueTimers) {
+            // could have been cancelled by a timer that ran before it in this batch
+            if(due.isCancelled()) {
+                continue;
+            }
+            try {
+                due.run();
+                count++;
+            } catch(Exception e) {
+                log.log(Level.SEVERE, "Exception in timer: " + e, e);
+            }
+        }
+        dueTimers.clear();
+        return count;
     }
 
     private void timerLoop() {
@@ -74,7 +183,9 @@ public class TimerQueue {
         while(!wantStop) {
             try {
                 Timer first = timers.take();
-                first.run();
+                if(!first.isCancelled()) {
+                    first.run();
+                }
             } catch (InterruptedException e) {
                 if(wantStop) {
                     break;
@@ -86,6 +197,25 @@ public class TimerQueue {
         log.fine("TimerQueue inactive");
     }
 
+    private void wheelLoop() {
+        log.fine("TimerQueue active (timing wheel)");
+        long tickMillis = wheel.getTickMillis();
+        while(!wantStop) {
+            try {
+                advanceWheel();
+                long now = Timer.getCurrentTicks();
+                Thread.sleep(tickMillis - now % tickMillis);
+            } catch (InterruptedException e) {
+                if(wantStop) {
+                    break;
+                }
+            } catch(Exception e) {
+                log.log(Level.SEVERE, "Exception in timer queue: " + e, e);
+            }
+        }
+        log.fine("TimerQueue inactive");
+    }
+
     private Thread getTimerThread() {
         return new Thread() {
             @Override
@@ -95,6 +225,15 @@ public class TimerQueue {
         };
     }
 
+    private Thread getWheelThread() {
+        return new Thread() {
+            @Override
+            public void run() {
+                wheelLoop();
+            }
+        };
+    }
+
     private void startTimerThread() {
         timerThread.start();
     }
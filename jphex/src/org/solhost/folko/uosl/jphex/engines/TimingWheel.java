@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.engines;
+
+import java.util.List;
+
+// Hierarchical timing wheel: LEVELS wheels of SLOTS slots each, a slot on level n
+// covers SLOTS^n ticks. A timer is put into the slot of the coarsest level that
+// still resolves its remaining time and moves down a level each time its slot
+// comes around, so scheduling and cancelling are O(1) and each tick only looks at
+// the timers that are (almost) due. Slots are intrusive doubly linked lists through
+// the timers. Not thread-safe, only the thread that runs the timers may use it.
+class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (SLOT_BITS * LEVELS); // in ticks
+    private final long tickMillis;
+    private final Timer[][] slots;
+    private long currentTick; // last tick that was processed
+    private int size;
+
+    public TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.slots = new Timer[LEVELS][SLOTS];
+        this.currentTick = now / tickMillis;
+    }
+
+    // also works for timers that are already scheduled, they are moved
+    public void schedule(Timer timer) {
+        cancel(timer);
+        // timers that are already due run in the next tick
+        insert(timer, currentTick + 1);
+        size++;
+    }
+
+    public void cancel(Timer timer) {
+        if(timer.wheelLevel < 0) {
+            return;
+        }
+        unlink(timer);
+        size--;
+    }
+
+    // moves all timers that expired until now into due, in order of their ticks
+    public void advance(long now, List<Timer> due) {
+        long targetTick = now / tickMillis;
+        while(currentTick < targetTick) {
+            currentTick++;
+
+            // bring down the timers of the coarser levels whose slot starts now
+            int level = 1;
+            while(level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                level++;
+            }
+            for(int l = level - 1; l >= 1; l--) {
+                cascade(l, (int) ((currentTick >>> (SLOT_BITS * l)) & SLOT_MASK));
+            }
+
+            Timer timer = slots[0][(int) (currentTick & SLOT_MASK)];
+            while(timer != null) {
+                Timer next = timer.wheelNext;
+                unlink(timer);
+                if(deadlineTick(timer) <= currentTick) {
+                    size--;
+                    due.add(timer);
+                } else {
+                    // was beyond MAX_SPAN when inserted
+                    insert(timer, currentTick + 1);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void cascade(int level, int slot) {
+        Timer timer = slots[level][slot];
+        slots[level][slot] = null;
+        while(timer != null) {
+            Timer next = timer.wheelNext;
+            timer.wheelNext = null;
+            timer.wheelPrev = null;
+            timer.wheelLevel = -1;
+            // the slot of the current tick on level 0 hasn't been processed yet
+            insert(timer, currentTick);
+            timer = next;
+        }
+    }
+
+    // never fire early: round the deadline up to the next tick
+    private long deadlineTick(Timer timer) {
+        return (timer.getDeadline() + tickMillis - 1) / tickMillis;
+    }
+
+    private void insert(Timer timer, long earliestTick) {
+        long tick = Math.max(deadlineTick(timer), earliestTick);
+        long delta = tick - currentTick;
+        if(delta >= MAX_SPAN) {
+            // park it in the farthest slot, it will be re-inserted from there
+            tick = currentTick + MAX_SPAN - 1;
+            delta = MAX_SPAN - 1;
+        }
+
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        Timer head = slots[level][slot];
+        timer.wheelPrev = null;
+        timer.wheelNext = head;
+        if(head != null) {
+            head.wheelPrev = timer;
+        }
+        slots[level][slot] = timer;
+        timer.wheelLevel = level;
+        timer.wheelSlot = slot;
+    }
+
+    private void unlink(Timer timer) {
+        if(timer.wheelPrev != null) {
+            timer.wheelPrev.wheelNext = timer.wheelNext;
+        } else {
+            slots[timer.wheelLevel][timer.wheelSlot] = timer.wheelNext;
+        }
+        if(timer.wheelNext != null) {
+            timer.wheelNext.wheelPrev = timer.wheelPrev;
+        }
+        timer.wheelNext = null;
+        timer.wheelPrev = null;
+        timer.wheelLevel = -1;
+    }
+}
@@ -21,12 +21,12 @@ package org.solhost.folko.uosl.jphex.network;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.libuosl.network.packets.SLPacket;
@@ -38,6 +38,9 @@ public class Client {
     private final SocketChannel channel;
     private InetSocketAddress remoteAddress;
     private final ByteBuffer recvBuffer, sendBuffer;
+    private boolean flushQueued; // game loop mode, guarded by sendBuffer
+    private Server.Reactor reactor;
+    private int queuedPackets;
 
     public Client(SocketChannel channel, Server server) throws IOException {
         this.channel = channel;
@@ -53,35 +56,35 @@ public class Client {
         this.recvBuffer = ByteBuffer.allocate(BUFFER_SIZE);
         this.recvBuffer.order(ByteOrder.BIG_ENDIAN);
 
-        this.sendBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // packets are encoded right into it, direct so that writing doesn't need another copy
+        this.sendBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
         this.sendBuffer.order(ByteOrder.BIG_ENDIAN);
     }
 
-    public List<SLPacket> processReadData(byte[] data, int len) throws IOException {
-        List<SLPacket> packets = new ArrayList<SLPacket>(5);
-        try {
-            recvBuffer.put(data, 0, len);
-        } catch(BufferOverflowException e) {
+    // reads straight into the receive buffer, returns -1 on end of stream
+    int readFrom(SocketChannel source) throws IOException {
+        if(!recvBuffer.hasRemaining()) {
             throw new IOException("buffer overflow when reading packet");
         }
+        return source.read(recvBuffer);
+    }
 
-        SLPacket lastPacket = null;
-        do {
-            recvBuffer.flip();
-            lastPacket = SLPacket.readPacket(recvBuffer);
-            if(lastPacket != null) {
-                // got a full packet, add to queue
-                log.finest(String.format("Got from %s: %02X (%s)", getRemoteAddress(), lastPacket.getID(), lastPacket.getClass().getSimpleName()));
-                packets.add(lastPacket);
-                recvBuffer.compact();
-            } else {
-                // didn't get a full packet, try again next time
-                recvBuffer.position(recvBuffer.limit());
-                recvBuffer.limit(recvBuffer.capacity());
+    // decodes all complete packets in the receive buffer, the rest is kept for the next read
+    List<SLPacket> decodePackets() throws IOException {
+        List<SLPacket> packets = new ArrayList<SLPacket>(5);
+        recvBuffer.flip();
+        try {
+            SLPacket packet;
+            while((packet = SLPacket.readPacket(recvBuffer)) != null) {
+                if(log.isLoggable(Level.FINEST)) {
+                    log.finest(String.format("Got from %s: %02X (%s)", getRemoteAddress(), packet.getID(), packet.getClass().getSimpleName()));
+                }
+                packets.add(packet);
             }
-        } while(lastPacket != null);
-
-        // no more packets, return received ones
+        } finally {
+            // move the incomplete rest to the front once per read instead of once per packet
+            recvBuffer.compact();
+        }
         return packets;
     }
 
@@ -90,8 +93,11 @@ public class Client {
     }
 
     public void send(SLPacket packet) {
-        log.finest(String.format("Sending to %s: %s (%s)", getRemoteAddress(), packet.getClass().getSimpleName(), packet.toString()));
-        boolean needEnable = false;
+        // formatting the packet is expensive, this is called for every packet that is sent
+        if(log.isLoggable(Level.FINEST)) {
+            log.finest(String.format("Sending to %s: %s (%s)", getRemoteAddress(), packet.getClass().getSimpleName(), packet.toString()));
+        }
+        boolean needEnable = false, needFlush = false;
 
         synchronized (sendBuffer) {
             if(sendBuffer.position() == 0) {
@@ -103,11 +109,38 @@ public class Client {
                 packet.writeTo(sendBuffer);
             } catch (IOException e) {
                 server.disconnect(this);
+                return;
+            }
+            if(server.isGameLoopMode()) {
+                // coalesce everything until the end of the tick
                 needEnable = false;
+                queuedPackets++;
+                if(!flushQueued) {
+                    flushQueued = true;
+                    needFlush = true;
+                }
             }
         }
         if(needEnable) {
             server.writeRequest(this);
+        } else if(needFlush) {
+            server.queueFlush(this);
+        }
+    }
+
+    // game loop mode: writes as much as the socket takes, returns whether data is left
+    boolean flushCoalesced(Server.FlushStats stats) throws IOException {
+        synchronized(sendBuffer) {
+            int packets = queuedPackets;
+            int bytes = sendBuffer.position();
+            flushQueued = false;
+            queuedPackets = 0;
+
+            sendBuffer.flip();
+            int written = channel.write(sendBuffer);
+            sendBuffer.compact();
+            stats.recordClient(packets, bytes, written);
+            return sendBuffer.position() > 0;
         }
     }
 
@@ -134,4 +167,13 @@ public class Client {
     SocketChannel getChannel() {
         return channel;
     }
+
+    // set once by the server before the client is used
+    void setReactor(Server.Reactor reactor) {
+        this.reactor = reactor;
+    }
+
+    Server.Reactor getReactor() {
+        return reactor;
+    }
 }
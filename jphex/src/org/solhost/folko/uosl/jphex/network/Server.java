@@ -20,122 +20,385 @@ package org.solhost.folko.uosl.jphex.network;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.libuosl.network.packets.SLPacket;
 
+// Non-blocking network server. By default a single selector thread accepts, reads and
+// writes everything. With more than one reactor, the thread that calls eventLoop only
+// accepts connections and hands them to N reactor threads round-robin, each with its own
+// selector. A client stays on its reactor for its whole life.
 public class Server {
     public interface ErrorHandler {
         public void onError(String message);
     }
 
+    // something that happened on a network thread and must be handled by the game loop
+    private static class NetworkEvent {
+        enum Kind { CONNECT, PACKET, DISCONNECT }
+        final Kind kind;
+        final Client client;
+        final SLPacket packet;
+
+        NetworkEvent(Kind kind, Client client, SLPacket packet) {
+            this.kind = kind;
+            this.client = client;
+            this.packet = packet;
+        }
+    }
+
+    // what the end-of-tick flushes did, only recorded in game loop mode
+    public static class FlushStats {
+        private long flushes, wakeups;
+        private long clients, packets, bytes, directBytes;
+        private int maxPackets, maxBytes;
+
+        synchronized void recordClient(int packetCount, int byteCount, int written) {
+            clients++;
+            packets += packetCount;
+            bytes += byteCount;
+            directBytes += written;
+            maxPackets = Math.max(maxPackets, packetCount);
+            maxBytes = Math.max(maxBytes, byteCount);
+        }
+
+        private synchronized void recordFlush(int wakeupCount) {
+            flushes++;
+            wakeups += wakeupCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            long avgPackets = clients > 0 ? packets / clients : 0;
+            long avgBytes = clients > 0 ? bytes / clients : 0;
+            return String.format("%d flushes with %d selector wakeups; per client flush: avg %d packets / %d bytes, "
+                    + "max %d packets / %d bytes; %d of %d bytes written without the selector",
+                    flushes, wakeups, avgPackets, avgBytes, maxPackets, maxBytes, directBytes, bytes);
+        }
+    }
+
+    // a selector with the clients pinned to it, clients read into their own buffers
+    class Reactor {
+        private final Selector selector;
+        private final Set<Client> writeRequestsOn, writeRequestsOff;
+        private final Object selectLock;
+        private final Queue<SocketChannel> newChannels; // accepted, but not registered yet
+
+        Reactor() throws IOException {
+            this.selector = SelectorProvider.provider().openSelector();
+            this.writeRequestsOn = new HashSet<Client>();
+            this.writeRequestsOff = new HashSet<Client>();
+            this.selectLock = new Object();
+            this.newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        }
+
+        void run(ErrorHandler errorHandler) {
+            while(!Thread.interrupted()) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    log.log(Level.SEVERE, "Couldn't select() on server socket: " + e.getMessage(), e);
+                    errorHandler.onError("select failed");
+                    break;
+                }
+
+                for(SelectionKey key : selector.selectedKeys()) {
+                    // keys can become invalid at any time, so always check validity before checking something else
+                    if(key.isValid() && key.isAcceptable()) {
+                        // pending connection
+                        onAcceptable((ServerSocketChannel) key.channel());
+                    }
+
+                    if(key.isValid() && key.isReadable()) {
+                        // pending bytes to be read
+                        boolean success = onReadable((SocketChannel) key.channel());
+                        if(!success) {
+                            key.cancel();
+                            try {
+                                key.channel().close();
+                            } catch (IOException e) {
+                                // doesn't matter because we were closing it anyways
+                            }
+                            continue;
+                        }
+                    }
+
+                    if(key.isValid() && key.isWritable()) {
+                        // ready to write pending data
+                        boolean success = onWritable((SocketChannel) key.channel());
+                        if(!success) {
+                            key.cancel();
+                            try {
+                                key.channel().close();
+                            } catch (IOException e) {
+                                // doesn't matter because we were closing it anyways
+                            }
+                            continue;
+                        }
+                    }
+                }
+
+                selector.selectedKeys().clear();
+
+                SocketChannel channel;
+                while((channel = newChannels.poll()) != null) {
+                    addClient(this, channel);
+                }
+
+                synchronized(selectLock) {
+                    for(Client client : writeRequestsOff) {
+                        if(writeRequestsOn.contains(client)) {
+                            // this fixes an ugly race condition
+                            continue;
+                        }
+
+                        SelectionKey key = client.getChannel().keyFor(selector);
+                        if(key == null || !key.isValid()) continue;
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    writeRequestsOff.clear();
+
+                    for(Client client : writeRequestsOn) {
+                        SelectionKey key = client.getChannel().keyFor(selector);
+                        if(key == null || !key.isValid()) continue;
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                    writeRequestsOn.clear();
+                }
+            }
+        }
+
+        // called by the acceptor thread, the channel is registered by the reactor thread
+        void assign(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(Client client, boolean enable, boolean wakeup) {
+            synchronized(selectLock) {
+                if(enable) {
+                    writeRequestsOn.add(client);
+                } else {
+                    writeRequestsOff.add(client);
+                }
+                if(wakeup) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        // returns whether the selector had to be woken up
+        boolean wakeupIfNeeded() {
+            synchronized(selectLock) {
+                if(!writeRequestsOn.isEmpty() || !writeRequestsOff.isEmpty()) {
+                    selector.wakeup();
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
     private static final Logger log = Logger.getLogger("jphex.server");
     private final IPacketHandler handler;
     private ServerSocketChannel serverSocket;
-    private Selector selector;
+    private Selector acceptSelector;
+    private final Reactor[] reactors;
+    private int nextReactor;
     private final Map<SocketChannel, Client> clients;
-    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
     private final int port;
-    private final Set<Client> writeRequestsOn, writeRequestsOff;
-    private final Object selectLock;
+    private final Queue<NetworkEvent> pendingEvents;
+    private final Queue<Client> pendingFlushes;
+    private final FlushStats flushStats;
+    private volatile boolean gameLoopMode;
+    private volatile Thread dispatcher;
 
     public Server(int port, IPacketHandler handler) {
+        this(port, handler, 1);
+    }
+
+    public Server(int port, IPacketHandler handler, int reactorCount) {
+        if(reactorCount < 1) {
+            throw new IllegalArgumentException("need at least one reactor");
+        }
         this.handler = handler;
         this.port = port;
-        this.clients = new HashMap<SocketChannel, Client>();
-        this.writeRequestsOn = new HashSet<Client>();
-        this.writeRequestsOff = new HashSet<Client>();
-        this.selectLock = new Object();
+        this.reactors = new Reactor[reactorCount];
+        this.clients = new ConcurrentHashMap<SocketChannel, Client>();
+        this.pendingEvents = new ConcurrentLinkedQueue<NetworkEvent>();
+        this.pendingFlushes = new ConcurrentLinkedQueue<Client>();
+        this.flushStats = new FlushStats();
+    }
+
+    // In game loop mode, incoming packets and disconnects are only queued on the network
+    // thread and handled when the game loop calls dispatchEvents. Outgoing packets are
+    // coalesced in the clients' send buffers and only written when the game loop calls
+    // flushWrites at the end of the tick.
+    public void setGameLoopMode(boolean enable) {
+        this.gameLoopMode = enable;
+    }
+
+    boolean isGameLoopMode() {
+        return gameLoopMode;
+    }
+
+    // with several reactors, the events of all clients are queued so that the
+    // handler still only sees one thread: the game loop or a dispatcher thread
+    private boolean queueEvents() {
+        return gameLoopMode || reactors.length > 1;
+    }
+
+    public FlushStats getFlushStats() {
+        return flushStats;
+    }
+
+    // game loop mode: handle everything that was received since the last call, returns number of packets
+    public int dispatchEvents() {
+        int packets = 0;
+        NetworkEvent event;
+        while((event = pendingEvents.poll()) != null) {
+            try {
+                switch(event.kind) {
+                case CONNECT:
+                    handler.onNewConnection(event.client);
+                    break;
+                case DISCONNECT:
+                    handler.onDisconnect(event.client);
+                    break;
+                case PACKET:
+                    handler.onIncomingPacket(event.client, event.packet);
+                    packets++;
+                    break;
+                }
+            } catch(Exception e) {
+                log.log(Level.SEVERE, "Exception when handling incoming packet: " + e.getMessage(), e);
+            }
+        }
+        return packets;
+    }
+
+    // game loop mode: try to write what each client got during the tick right away,
+    // the selector only has to take care of the clients whose socket buffer was full.
+    // Each selector is woken up at most once per tick.
+    public void flushWrites() {
+        Client client;
+        while((client = pendingFlushes.poll()) != null) {
+            try {
+                if(client.flushCoalesced(flushStats)) {
+                    client.getReactor().requestWrite(client, true, false);
+                }
+            } catch(IOException e) {
+                log.warning("Write error from client " + client.getRemoteAddress() + ": " + e.getMessage());
+                disconnect(client);
+            }
+        }
+
+        int wakeups = 0;
+        for(Reactor reactor : reactors) {
+            if(reactor.wakeupIfNeeded()) {
+                wakeups++;
+            }
+        }
+        flushStats.recordFlush(wakeups);
+    }
+
+    // game loop mode: the client got its first packet since the last flush
+    void queueFlush(Client client) {
+        pendingFlushes.add(client);
     }
 
     public void listen() throws IOException {
-        selector = SelectorProvider.provider().openSelector();
+        for(int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor();
+        }
         serverSocket = ServerSocketChannel.open();
         serverSocket.configureBlocking(false);
         serverSocket.bind(new InetSocketAddress(port));
-        serverSocket.register(selector, SelectionKey.OP_ACCEPT);
+        if(reactors.length == 1) {
+            serverSocket.register(reactors[0].selector, SelectionKey.OP_ACCEPT);
+        } else {
+            acceptSelector = SelectorProvider.provider().openSelector();
+            serverSocket.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        }
     }
 
+    // runs until the calling thread is interrupted
     public void eventLoop(ErrorHandler errorHandler) {
+        if(reactors.length == 1) {
+            reactors[0].run(errorHandler);
+            return;
+        }
+
+        Thread[] threads = new Thread[reactors.length];
+        for(int i = 0; i < reactors.length; i++) {
+            Reactor reactor = reactors[i];
+            threads[i] = new Thread(() -> reactor.run(errorHandler), "Reactor-" + i);
+            threads[i].start();
+        }
+        if(!gameLoopMode) {
+            dispatcher = new Thread(this::dispatchLoop, "NetworkDispatcher");
+            dispatcher.start();
+        }
+        log.fine("Accepting connections for " + reactors.length + " reactors");
+
         while(!Thread.interrupted()) {
             try {
-                selector.select();
+                acceptSelector.select();
             } catch (IOException e) {
                 log.log(Level.SEVERE, "Couldn't select() on server socket: " + e.getMessage(), e);
                 errorHandler.onError("select failed");
                 break;
             }
-
-            for(SelectionKey key : selector.selectedKeys()) {
-                // keys can become invalid at any time, so always check validity before checking something else
+            for(SelectionKey key : acceptSelector.selectedKeys()) {
                 if(key.isValid() && key.isAcceptable()) {
-                    // pending connection
                     onAcceptable((ServerSocketChannel) key.channel());
                 }
-
-                if(key.isValid() && key.isReadable()) {
-                    // pending bytes to be read
-                    boolean success = onReadable((SocketChannel) key.channel());
-                    if(!success) {
-                        key.cancel();
-                        try {
-                            key.channel().close();
-                        } catch (IOException e) {
-                            // doesn't matter because we were closing it anyways
-                        }
-                        continue;
-                    }
-                }
-
-                if(key.isValid() && key.isWritable()) {
-                    // ready to write pending data
-                    boolean success = onWritable((SocketChannel) key.channel());
-                    if(!success) {
-                        key.cancel();
-                        try {
-                            key.channel().close();
-                        } catch (IOException e) {
-                            // doesn't matter because we were closing it anyways
-                        }
-                        continue;
-                    }
-                }
             }
+            acceptSelector.selectedKeys().clear();
+        }
 
-            selector.selectedKeys().clear();
-
-            synchronized(selectLock) {
-                for(Client client : writeRequestsOff) {
-                    if(writeRequestsOn.contains(client)) {
-                        // this fixes an ugly race condition
-                        continue;
-                    }
-
-                    SelectionKey key = client.getChannel().keyFor(selector);
-                    if(key == null || !key.isValid()) continue;
-                    key.interestOps(SelectionKey.OP_READ);
-                }
-                writeRequestsOff.clear();
+        if(dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        for(Thread thread : threads) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                // doesn't matter as we're stopping anyways
+            }
+        }
+    }
 
-                for(Client client : writeRequestsOn) {
-                    SelectionKey key = client.getChannel().keyFor(selector);
-                    if(key == null || !key.isValid()) continue;
-                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-                }
-                writeRequestsOn.clear();
+    // several reactors without game loop: hands the queued events to the handler
+    private void dispatchLoop() {
+        while(!Thread.interrupted()) {
+            if(pendingEvents.isEmpty()) {
+                LockSupport.park(this);
             }
+            dispatchEvents();
+        }
+    }
+
+    private void queueEvent(NetworkEvent event) {
+        pendingEvents.add(event);
+        Thread thread = dispatcher;
+        if(thread != null) {
+            LockSupport.unpark(thread);
         }
     }
 
@@ -148,43 +411,70 @@ public class Server {
                 // doesn't matter as we're disconnecting them anyways
             }
         }
-        clients.remove(client);
-        handler.onDisconnect(client);
+        if(clients.remove(channel) == null) {
+            // already disconnected
+            return;
+        }
+        if(queueEvents()) {
+            queueEvent(new NetworkEvent(NetworkEvent.Kind.DISCONNECT, client, null));
+        } else {
+            handler.onDisconnect(client);
+        }
     }
 
     // client should call this when it wants to write
     public void writeRequest(Client client) {
-        synchronized(selectLock) {
-            writeRequestsOn.add(client);
-            selector.wakeup();
-        }
+        client.getReactor().requestWrite(client, true, !gameLoopMode);
     }
 
     // disable client write ready notification
     public void stopWriteRequest(Client client) {
-        synchronized(selectLock) {
-            writeRequestsOff.add(client);
-            selector.wakeup();
-        }
+        client.getReactor().requestWrite(client, false, !gameLoopMode);
     }
 
     private void onAcceptable(ServerSocketChannel channel) {
         SocketChannel clientChannel;
-        Client client;
         try {
             clientChannel = channel.accept();
             if(clientChannel == null) {
                 return;
             }
             clientChannel.configureBlocking(false);
-            clientChannel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            log.warning("Error accepting client: '" + e.getMessage() + "', ignoring");
+            return;
+        }
+
+        if(reactors.length == 1) {
+            addClient(reactors[0], clientChannel);
+        } else {
+            reactors[nextReactor].assign(clientChannel);
+            nextReactor = (nextReactor + 1) % reactors.length;
+        }
+    }
+
+    // runs on the reactor's thread
+    private void addClient(Reactor reactor, SocketChannel clientChannel) {
+        Client client;
+        try {
+            clientChannel.register(reactor.selector, SelectionKey.OP_READ);
             client = new Client(clientChannel, this);
+            client.setReactor(reactor);
         } catch (IOException e) {
             log.warning("Error accepting client: '" + e.getMessage() + "', ignoring");
+            try {
+                clientChannel.close();
+            } catch (IOException e2) {
+                // doesn't matter because we're dropping it anyways
+            }
             return;
         }
         clients.put(clientChannel, client);
-        handler.onNewConnection(client);
+        if(queueEvents()) {
+            queueEvent(new NetworkEvent(NetworkEvent.Kind.CONNECT, client, null));
+        } else {
+            handler.onNewConnection(client);
+        }
     }
 
     private boolean onReadable(SocketChannel channel) {
@@ -193,18 +483,17 @@ public class Server {
             return false;
         }
 
-        readBuffer.clear();
         List<SLPacket> packets;
 
         try {
-            int bytesRead = channel.read(readBuffer);
+            int bytesRead = client.readFrom(channel);
             if(bytesRead == -1) {
                 // normal shutdown of the client
                 disconnect(client);
                 return false;
             }
 
-            packets = client.processReadData(readBuffer.array(), bytesRead);
+            packets = client.decodePackets();
         } catch (IOException e) {
             log.warning("Read error from client " + client.getRemoteAddress() + ": " + e.getMessage());
             disconnect(client);
@@ -213,6 +502,10 @@ public class Server {
 
         // add all received packets to handler
         for(SLPacket packet : packets) {
+            if(queueEvents()) {
+                queueEvent(new NetworkEvent(NetworkEvent.Kind.PACKET, client, packet));
+                continue;
+            }
             try {
                 handler.onIncomingPacket(client, packet);
             } catch(Exception e) {
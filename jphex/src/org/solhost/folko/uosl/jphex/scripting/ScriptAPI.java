@@ -22,6 +22,7 @@ import java.util.Collection;
 
 import org.jruby.RubyProc;
 import org.jruby.runtime.builtin.IRubyObject;
+import org.solhost.folko.uosl.jphex.engines.Timer;
 import org.solhost.folko.uosl.jphex.types.Item;
 import org.solhost.folko.uosl.jphex.types.Mobile;
 import org.solhost.folko.uosl.jphex.types.NPC;
@@ -62,7 +63,7 @@ public interface ScriptAPI {
     public void saveWorld();
 
     public long getTimerTicks();
-    public void addTimer(long delayUntilRunInMillis, RubyProc block);
+    public Timer addTimer(long delayUntilRunInMillis, RubyProc block); // timer.cancel() stops it
 
     public Item createItemInBackpack(Mobile mob, int graphic);
     public Item createItemAtMobile(Mobile mob, int graphic);
@@ -64,7 +64,7 @@ public class ScriptAPIImpl implements ScriptAPI {
 
     @Override
     public void moveObject(SLObject obj, int x, int y) {
-        byte z = SLData.get().getMap().getTileElevation(new Point2D(x, y));
+        byte z = SLData.get().getMap().getTileElevation(x, y);
         moveObject(obj, x, y, z);
     }
 
@@ -94,7 +94,7 @@ public class ScriptAPIImpl implements ScriptAPI {
 
     @Override
     public void saveWorld() {
-        world.save();
+        world.saveInBackground();
     }
 
     @Override
@@ -294,8 +294,8 @@ public class ScriptAPIImpl implements ScriptAPI {
     }
 
     @Override
-    public void addTimer(long millis, final RubyProc block) {
-        TimerQueue.get().addTimer(new Timer(millis, new Runnable() {
+    public Timer addTimer(long millis, final RubyProc block) {
+        return TimerQueue.get().addTimer(new Timer(millis, new Runnable() {
             public void run() {
                 IRubyObject args[] = {};
                 block.call(ScriptManager.instance().getContext(), args);
@@ -178,7 +178,8 @@ public class ScriptManager {
         return JavaEmbedUtils.javaToRuby(ruby.getProvider().getRuntime(), object);
     }
 
-    public String serialize(RubyObject object) {
+    // synchronized because the scripting container's globals are used, e.g. when loading in parallel
+    public synchronized String serialize(RubyObject object) {
         ruby.put("$obj", object);
         Object res = ruby.runScriptlet("YAML::dump($obj)");
         if(res instanceof String) {
@@ -189,7 +190,7 @@ public class ScriptManager {
         }
     }
 
-    public RubyObject deserialize(String serialized) {
+    public synchronized RubyObject deserialize(String serialized) {
         ruby.put("$ser", serialized);
         Object res = ruby.runScriptlet("YAML::load($ser)");
         if(res != null) {
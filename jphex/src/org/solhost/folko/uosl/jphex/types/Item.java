@@ -33,6 +33,8 @@ import org.solhost.folko.uosl.jphex.engines.Timer;
 import org.solhost.folko.uosl.jphex.scripting.ItemBehavior;
 import org.solhost.folko.uosl.jphex.scripting.ScriptManager;
 import org.solhost.folko.uosl.jphex.world.ObjectRegistry;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.data.SLData;
 import org.solhost.folko.uosl.libuosl.data.SLTiles.StaticTile;
 import org.solhost.folko.uosl.libuosl.network.SendableItem;
@@ -148,6 +150,7 @@ public class Item extends SLObject implements SendableItem {
 
     public void decayInMillis(long millis) {
         this.decayAt = Timer.getCurrentTicks() + millis;
+        for(ObjectObserver o : observers) o.onDecayChanged(this);
     }
 
     public boolean shouldDecay() {
@@ -155,7 +158,16 @@ public class Item extends SLObject implements SendableItem {
     }
 
     public void stopDecay() {
+        if(decayAt == 0) {
+            return;
+        }
         this.decayAt = 0;
+        for(ObjectObserver o : observers) o.onDecayChanged(this);
+    }
+
+    // absolute time in timer ticks, 0 if the item doesn't decay
+    public long getDecayAt() {
+        return decayAt;
     }
 
     public void setBehavior(String behavior) {
@@ -463,6 +475,40 @@ public class Item extends SLObject implements SendableItem {
         this.children = new CopyOnWriteArrayList<Item>();
     }
 
+    @Override
+    public void writeFields(SaveOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeBoolean(isContainer);
+        out.writeBoolean(isWearable);
+        out.writeBoolean(isStackable);
+        out.writeBoolean(locked);
+        out.writeShort(weight);
+        out.writeShort(defaultLayer);
+        out.writeByte(lightLevel);
+        out.writeInt(amount);
+        out.writeInt(price);
+        out.writeInt(height);
+        out.writeString(behavior);
+        out.writeLong(decayAt);
+    }
+
+    @Override
+    public void readFields(SaveInput in) throws IOException {
+        super.readFields(in);
+        this.isContainer = in.readBoolean();
+        this.isWearable = in.readBoolean();
+        this.isStackable = in.readBoolean();
+        this.locked = in.readBoolean();
+        this.weight = in.readShort();
+        this.defaultLayer = in.readShort();
+        this.lightLevel = (byte) in.readByte();
+        this.amount = in.readInt();
+        this.price = in.readInt();
+        this.height = in.readInt();
+        this.behavior = in.readString();
+        this.decayAt = in.readLong();
+    }
+
     public int getWeaponDamage() {
         switch(graphic) {
         case Items.GFX_GREAT_AXE:           return RandUtil.random(16, 20);
@@ -28,6 +28,8 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.common.RandUtil;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.data.SLTiles;
 import org.solhost.folko.uosl.libuosl.data.SLTiles.StaticTile;
 import org.solhost.folko.uosl.libuosl.network.SendableMobile;
@@ -108,6 +110,11 @@ public abstract class Mobile extends SLObject implements SendableMobile {
         for(ObjectObserver o : observers) o.onAttributeChanged(this, a);
     }
 
+    // sets the raw value without any game logic, e.g. when restoring a saved state
+    public void restoreAttribute(Attribute a, long value) {
+        attributes.put(a, value);
+    }
+
     protected void onLevelup() {
         rewardAttribute(Attribute.STRENGTH, Math.max(1, Math.round(getAttribute(Attribute.STRENGTH) * 0.05)));
         rewardAttribute(Attribute.DEXTERITY, Math.max(1, Math.round(getAttribute(Attribute.DEXTERITY) * 0.05)));
@@ -471,6 +478,34 @@ public abstract class Mobile extends SLObject implements SendableMobile {
         this.damagers = new HashMap<Mobile, Integer>();
     }
 
+    // the opponent and refresh state are not saved, they are reset on start anyways
+    @Override
+    public void writeFields(SaveOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeByte(facing.toByte());
+        out.writeInt(attributes.size());
+        for(Map.Entry<Attribute, Long> entry : attributes.entrySet()) {
+            out.writeEnum(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeShort(hairHue);
+        out.writeShort(hairStyle);
+    }
+
+    @Override
+    public void readFields(SaveInput in) throws IOException {
+        super.readFields(in);
+        this.facing = Direction.parse((short) in.readByte());
+        attributes.clear();
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            Attribute attr = in.readEnum(Attribute.class);
+            attributes.put(attr, in.readLong());
+        }
+        this.hairHue = in.readShort();
+        this.hairStyle = in.readShort();
+    }
+
     public synchronized boolean consumeAttribute(Attribute stat, long amount) {
         long oldValue = getAttribute(stat);
         if(amount > oldValue) {
@@ -18,11 +18,14 @@
  ******************************************************************************/
 package org.solhost.folko.uosl.jphex.types;
 
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.jphex.scripting.MobileBehavior;
 import org.solhost.folko.uosl.jphex.scripting.ScriptManager;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.types.Mobiles;
 
 public class NPC extends Mobile {
@@ -157,4 +160,18 @@ public class NPC extends Mobile {
             }
         }
     }
+
+    @Override
+    public void writeFields(SaveOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeString(behavior);
+        out.writeString(suffix);
+    }
+
+    @Override
+    public void readFields(SaveInput in) throws IOException {
+        super.readFields(in);
+        this.behavior = in.readString();
+        this.suffix = in.readString();
+    }
 }
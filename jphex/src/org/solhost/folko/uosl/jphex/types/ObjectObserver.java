@@ -32,4 +32,6 @@ public interface ObjectObserver {
     public void onChildRemoved(Item container, Item child);
     public void onDeath(Mobile mob);
     public void onOpponentChanged(Mobile mob, Mobile victim, Mobile oldVictim);
+    public void onDecayChanged(Item item);
+    public void onNameChanged(SLObject src, String oldName);
 }
@@ -18,6 +18,7 @@
  ******************************************************************************/
 package org.solhost.folko.uosl.jphex.types;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -28,6 +29,8 @@ import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.jphex.engines.Group;
 import org.solhost.folko.uosl.jphex.network.Client;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.network.packets.LocationPacket;
 import org.solhost.folko.uosl.libuosl.network.packets.SLPacket;
 import org.solhost.folko.uosl.libuosl.network.packets.SendTextPacket;
@@ -362,4 +365,28 @@ public class Player extends Mobile {
         sendSysMessage("Your level has increased to " + getAttribute(Attribute.LEVEL));
         sendSound(0x17);
     }
+
+    @Override
+    public void writeFields(SaveOutput out) throws IOException {
+        super.writeFields(out);
+        out.writeEnum(commandLevel);
+        out.writeLong(seed);
+        out.writeString(email);
+        out.writeString(homepage);
+        out.writeString(realName);
+        out.writeString(password);
+        out.writeString(pcSpecs);
+    }
+
+    @Override
+    public void readFields(SaveInput in) throws IOException {
+        super.readFields(in);
+        this.commandLevel = in.readEnum(CommandLevel.class);
+        this.seed = in.readLong();
+        this.email = in.readString();
+        this.homepage = in.readString();
+        this.realName = in.readString();
+        this.password = in.readString();
+        this.pcSpecs = in.readString();
+    }
 }
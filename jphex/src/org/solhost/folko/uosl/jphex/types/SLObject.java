@@ -28,6 +28,8 @@ import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jruby.RubyObject;
 import org.solhost.folko.uosl.jphex.scripting.ScriptManager;
+import org.solhost.folko.uosl.jphex.world.SaveInput;
+import org.solhost.folko.uosl.jphex.world.SaveOutput;
 import org.solhost.folko.uosl.libuosl.data.SLData;
 import org.solhost.folko.uosl.libuosl.network.SendableObject;
 import org.solhost.folko.uosl.libuosl.types.Point2D;
@@ -138,7 +140,9 @@ public abstract class SLObject implements Serializable, SendableObject {
     }
 
     public void setName(String name) {
+        String oldName = this.name;
         this.name = name;
+        for(ObjectObserver o : observers) o.onNameChanged(this, oldName);
     }
 
     public void setLocation(Point3D newPosition) {
@@ -188,6 +192,46 @@ public abstract class SLObject implements Serializable, SendableObject {
         }
     }
 
+    // binary save format, subclasses append their fields after calling super
+    public void writeFields(SaveOutput out) throws IOException {
+        out.writeBoolean(location != null);
+        if(location != null) {
+            out.writeShort(location.getX());
+            out.writeShort(location.getY());
+            out.writeByte(location.getZ());
+        }
+        out.writeInt(graphic);
+        out.writeInt(hue);
+        out.writeString(name);
+        out.writeBoolean(deleted);
+        out.writeBoolean(hidden);
+        out.writeInt(scriptProperties.size());
+        for(String key : scriptProperties.keySet()) {
+            out.writeString(key);
+            out.writeString(ScriptManager.instance().serialize(scriptProperties.get(key)));
+        }
+    }
+
+    public void readFields(SaveInput in) throws IOException {
+        if(in.readBoolean()) {
+            int x = in.readShort() & 0xFFFF;
+            int y = in.readShort() & 0xFFFF;
+            int z = in.readByte();
+            this.location = new Point3D(x, y, z);
+        }
+        this.graphic = in.readInt();
+        this.hue = in.readInt();
+        this.name = in.readString();
+        this.deleted = in.readBoolean();
+        this.hidden = in.readBoolean();
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            String key = in.readString();
+            String data = in.readString();
+            scriptProperties.put(key, ScriptManager.instance().deserialize(data));
+        }
+    }
+
     // at startup
     public abstract void foundOrphan(SLObject orphan);
 
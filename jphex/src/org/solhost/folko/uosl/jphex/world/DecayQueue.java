@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.solhost.folko.uosl.jphex.types.Item;
+
+// items that are going to decay, sorted into buckets of BUCKET_MILLIS by their decay time
+// so that the decay timer only has to look at the items that are actually due.
+// Not thread-safe, the owner has to serialize access.
+class DecayQueue {
+    public static final long BUCKET_MILLIS = 1000;
+    private final NavigableMap<Long, Set<Item>> buckets;
+    private final Map<Item, Long> bucketOf;
+
+    public DecayQueue() {
+        this.buckets = new TreeMap<Long, Set<Item>>();
+        this.bucketOf = new HashMap<Item, Long>();
+    }
+
+    // enqueues the item according to its decay time, items that don't decay are removed
+    public void update(Item item) {
+        long decayAt = item.getDecayAt();
+        if(decayAt <= 0) {
+            remove(item);
+        } else {
+            schedule(item, decayAt);
+        }
+    }
+
+    // puts the item into the bucket of the given time regardless of its decay time
+    public void schedule(Item item, long when) {
+        // round up so that every item in a due bucket is due
+        long bucket = (when + BUCKET_MILLIS - 1) / BUCKET_MILLIS;
+        Long oldBucket = bucketOf.put(item, bucket);
+        if(oldBucket != null) {
+            if(oldBucket == bucket) {
+                return;
+            }
+            removeFromBucket(item, oldBucket);
+        }
+        Set<Item> items = buckets.get(bucket);
+        if(items == null) {
+            items = new LinkedHashSet<Item>();
+            buckets.put(bucket, items);
+        }
+        items.add(item);
+    }
+
+    public void remove(Item item) {
+        Long oldBucket = bucketOf.remove(item);
+        if(oldBucket != null) {
+            removeFromBucket(item, oldBucket);
+        }
+    }
+
+    // removes up to max items that are due at the given time and adds them to due
+    public int pollDue(long now, int max, List<Item> due) {
+        int count = 0;
+        long lastDueBucket = now / BUCKET_MILLIS;
+        while(count < max && !buckets.isEmpty() && buckets.firstKey() <= lastDueBucket) {
+            Set<Item> items = buckets.firstEntry().getValue();
+            Iterator<Item> it = items.iterator();
+            while(count < max && it.hasNext()) {
+                Item item = it.next();
+                it.remove();
+                bucketOf.remove(item);
+                due.add(item);
+                count++;
+            }
+            if(items.isEmpty()) {
+                buckets.pollFirstEntry();
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return bucketOf.size();
+    }
+
+    private void removeFromBucket(Item item, long bucket) {
+        Set<Item> items = buckets.get(bucket);
+        if(items == null) {
+            return;
+        }
+        items.remove(item);
+        if(items.isEmpty()) {
+            buckets.remove(bucket);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.solhost.folko.uosl.jphex.types.Player;
+import org.solhost.folko.uosl.jphex.types.SLObject;
+
+// remembers which top-level objects (mobiles and items on ground) each online
+// player's client currently knows about, and which players know each object.
+// World keeps it in sync with the object and delete packets it sends, so
+// movement only has to look at the difference instead of whole areas.
+// Not thread-safe, only used while holding the world lock.
+class InterestManager {
+    private final Map<Player, Set<SLObject>> knownObjects;
+    private final Map<SLObject, Set<Player>> knownBy;
+
+    public InterestManager() {
+        this.knownObjects = new HashMap<Player, Set<SLObject>>();
+        this.knownBy = new HashMap<SLObject, Set<Player>>();
+    }
+
+    public void addPlayer(Player player) {
+        if(!knownObjects.containsKey(player)) {
+            knownObjects.put(player, new HashSet<SLObject>());
+        }
+    }
+
+    public void removePlayer(Player player) {
+        Set<SLObject> known = knownObjects.remove(player);
+        if(known == null) {
+            return;
+        }
+        for(SLObject obj : known) {
+            removeObserver(obj, player);
+        }
+    }
+
+    // returns true if the player didn't know the object before
+    public boolean markKnown(Player player, SLObject obj) {
+        Set<SLObject> known = knownObjects.get(player);
+        if(known == null || !known.add(obj)) {
+            return false;
+        }
+        Set<Player> observers = knownBy.get(obj);
+        if(observers == null) {
+            observers = new HashSet<Player>(4);
+            knownBy.put(obj, observers);
+        }
+        observers.add(player);
+        return true;
+    }
+
+    public void forget(Player player, SLObject obj) {
+        Set<SLObject> known = knownObjects.get(player);
+        if(known != null && known.remove(obj)) {
+            removeObserver(obj, player);
+        }
+    }
+
+    public void forgetObject(SLObject obj) {
+        Set<Player> observers = knownBy.remove(obj);
+        if(observers == null) {
+            return;
+        }
+        for(Player player : observers) {
+            knownObjects.get(player).remove(obj);
+        }
+    }
+
+    public boolean knows(Player player, SLObject obj) {
+        Set<SLObject> known = knownObjects.get(player);
+        return known != null && known.contains(obj);
+    }
+
+    // copies because callers usually send deletes while iterating
+    public List<SLObject> getKnownObjects(Player player) {
+        Set<SLObject> known = knownObjects.get(player);
+        if(known == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<SLObject>(known);
+    }
+
+    public List<Player> getObservers(SLObject obj) {
+        Set<Player> observers = knownBy.get(obj);
+        if(observers == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Player>(observers);
+    }
+
+    public int getKnownCount() {
+        int count = 0;
+        for(Set<SLObject> known : knownObjects.values()) {
+            count += known.size();
+        }
+        return count;
+    }
+
+    private void removeObserver(SLObject obj, Player player) {
+        Set<Player> observers = knownBy.get(obj);
+        if(observers != null) {
+            observers.remove(player);
+            if(observers.isEmpty()) {
+                knownBy.remove(obj);
+            }
+        }
+    }
+}
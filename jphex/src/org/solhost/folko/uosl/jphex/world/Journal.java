@@ -0,0 +1,431 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.solhost.folko.uosl.jphex.types.Mobile;
+import org.solhost.folko.uosl.jphex.types.SLObject;
+import org.solhost.folko.uosl.libuosl.types.Attribute;
+import org.solhost.folko.uosl.libuosl.types.Point3D;
+
+// Write-ahead journal of the changes since the last full save (the checkpoint).
+// The world marks objects as changed from its observer callbacks, collect() turns
+// the changes into records of the current object state and writePending() appends
+// them to journal.<generation>.bin. Many changes of an object between two collects
+// result in one record. Each checkpoint starts a new generation and stores it in the
+// save file, loading replays all generations from that one on top of the save.
+// Marking and collecting must happen under the world lock, writing can happen anywhere.
+//
+// A journal file is a header (int magic, int version) followed by batches of
+// int length, long CRC32 and records, a torn batch at the end is ignored.
+class Journal {
+    private static final Logger log = Logger.getLogger("jphex.journal");
+    private static final int MAGIC = 0x4A50484A; // "JPHJ"
+    private static final int BATCH_HEADER_SIZE = 12;
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final String FILE_PREFIX = "journal.", FILE_SUFFIX = ".bin";
+    private static final byte RECORD_END = 0, RECORD_OBJECT = 1, RECORD_PLACEMENT = 2,
+                              RECORD_ATTRIBUTES = 3, RECORD_DELETE = 4;
+    private final String savePath;
+    private final Map<SLObject, Boolean> changed; // value: true if the full object changed
+    private final Map<Mobile, Set<Attribute>> changedAttributes;
+    private final Set<Long> deleted;
+    private final Queue<Batch> pending;
+    private final Object ioLock;
+    private long generation;
+    private long openGeneration;
+    private FileChannel channel;
+    private long bytesWritten;
+
+    private static class Batch {
+        final long generation;
+        final SaveOutput records;
+
+        Batch(long generation, SaveOutput records) {
+            this.generation = generation;
+            this.records = records;
+        }
+    }
+
+    public Journal(String savePath, long generation) {
+        this.savePath = savePath;
+        this.generation = generation;
+        this.openGeneration = -1;
+        this.changed = new LinkedHashMap<SLObject, Boolean>();
+        this.changedAttributes = new HashMap<Mobile, Set<Attribute>>();
+        this.deleted = new LinkedHashSet<Long>();
+        this.pending = new ConcurrentLinkedQueue<Batch>();
+        this.ioLock = new Object();
+    }
+
+    // registered or changed in a way that needs the full state
+    public void objectChanged(SLObject obj) {
+        changed.put(obj, true);
+        if(obj instanceof Mobile) {
+            changedAttributes.remove(obj);
+        }
+    }
+
+    // location or parent changed
+    public void placementChanged(SLObject obj) {
+        if(!changed.containsKey(obj)) {
+            changed.put(obj, false);
+        }
+    }
+
+    public void attributeChanged(Mobile mob, Attribute attr) {
+        if(changed.get(mob) == Boolean.TRUE) {
+            return;
+        }
+        Set<Attribute> attrs = changedAttributes.get(mob);
+        if(attrs == null) {
+            attrs = EnumSet.noneOf(Attribute.class);
+            changedAttributes.put(mob, attrs);
+        }
+        attrs.add(attr);
+    }
+
+    public void objectDeleted(SLObject obj) {
+        changed.remove(obj);
+        if(obj instanceof Mobile) {
+            changedAttributes.remove(obj);
+        }
+        deleted.add(obj.getSerial());
+    }
+
+    // encodes the changes since the last collect into a batch for writePending
+    public void collect() throws IOException {
+        if(changed.isEmpty() && changedAttributes.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+        SaveOutput out = SaveOutput.inMemory(CHUNK_SIZE);
+        for(Map.Entry<SLObject, Boolean> entry : changed.entrySet()) {
+            SLObject obj = entry.getKey();
+            if(entry.getValue()) {
+                out.writeByte(RECORD_OBJECT);
+                World.writeObjectRecord(out, obj);
+            } else {
+                out.writeByte(RECORD_PLACEMENT);
+                out.writeLong(obj.getSerial());
+                SLObject parent = obj.getParent();
+                out.writeLong(parent != null ? parent.getSerial() : -1);
+                Point3D loc = obj.getLocation();
+                out.writeBoolean(loc != null);
+                if(loc != null) {
+                    out.writeShort(loc.getX());
+                    out.writeShort(loc.getY());
+                    out.writeByte(loc.getZ());
+                }
+            }
+        }
+        for(Map.Entry<Mobile, Set<Attribute>> entry : changedAttributes.entrySet()) {
+            Mobile mob = entry.getKey();
+            out.writeByte(RECORD_ATTRIBUTES);
+            out.writeLong(mob.getSerial());
+            out.writeInt(entry.getValue().size());
+            for(Attribute attr : entry.getValue()) {
+                out.writeEnum(attr);
+                out.writeLong(mob.getAttribute(attr));
+            }
+        }
+        for(long serial : deleted) {
+            out.writeByte(RECORD_DELETE);
+            out.writeLong(serial);
+        }
+        out.writeByte(RECORD_END);
+        changed.clear();
+        changedAttributes.clear();
+        deleted.clear();
+        pending.add(new Batch(generation, out));
+    }
+
+    // collects the remaining changes and starts a new generation, the
+    // returned generation contains everything that happens after this call
+    public long startGeneration() throws IOException {
+        collect();
+        generation++;
+        return generation;
+    }
+
+    // appends the collected batches to their files in the order they were collected
+    public void writePending() throws IOException {
+        synchronized(ioLock) {
+            Batch batch;
+            while((batch = pending.peek()) != null) {
+                if(batch.generation != openGeneration) {
+                    openFile(batch.generation);
+                }
+                ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+                header.putInt((int) batch.records.getBodyLength());
+                header.putLong(batch.records.getChecksum());
+                header.flip();
+                while(header.hasRemaining()) {
+                    channel.write(header);
+                }
+                batch.records.writeBodyTo(channel);
+                bytesWritten += BATCH_HEADER_SIZE + batch.records.getBodyLength();
+                pending.poll();
+            }
+            if(channel != null) {
+                channel.force(false);
+            }
+        }
+    }
+
+    // called after a checkpoint with the given generation has been written
+    public void deleteBefore(long keepGeneration) {
+        synchronized(ioLock) {
+            for(long gen : findGenerations(savePath, 0)) {
+                if(gen >= keepGeneration) {
+                    continue;
+                }
+                if(gen == openGeneration) {
+                    closeFile();
+                }
+                try {
+                    Files.deleteIfExists(fileFor(savePath, gen).toPath());
+                } catch(IOException e) {
+                    log.log(Level.WARNING, "Couldn't delete old journal: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    public long getBytesWritten() {
+        synchronized(ioLock) {
+            return bytesWritten;
+        }
+    }
+
+    public void close() {
+        synchronized(ioLock) {
+            closeFile();
+        }
+    }
+
+    // Applies the journal generations from firstGeneration on to the loaded objects
+    // and their parent serials. Returns the generation to continue with.
+    public static long replay(String savePath, long firstGeneration, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) throws IOException {
+        List<Long> generations = findGenerations(savePath, firstGeneration);
+        int records = 0;
+        for(long gen : generations) {
+            records += replayFile(fileFor(savePath, gen), objects, orphans);
+        }
+        if(generations.isEmpty()) {
+            return firstGeneration;
+        }
+        log.config(String.format("Replayed %d journal records from %d files", records, generations.size()));
+        // never append to a file that could have a torn end
+        return generations.get(generations.size() - 1) + 1;
+    }
+
+    private static int replayFile(File file, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) throws IOException {
+        int records = 0;
+        try(FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            if(!readFully(in, header) || header.getInt() != MAGIC) {
+                log.warning("Ignoring invalid journal " + file);
+                return 0;
+            }
+            // the records haven't changed since version 2
+            int version = header.getInt();
+            if(version < 2 || version > SaveInput.VERSION) {
+                log.warning("Ignoring journal " + file + " with unsupported version " + version);
+                return 0;
+            }
+            ByteBuffer batchHeader = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            while(true) {
+                batchHeader.clear();
+                if(!readFully(in, batchHeader)) {
+                    if(batchHeader.position() > 0) {
+                        log.warning("Torn batch at the end of journal " + file);
+                    }
+                    break;
+                }
+                int length = batchHeader.getInt();
+                long checksum = batchHeader.getLong();
+                if(length <= 0 || length > in.size()) {
+                    log.warning("Invalid batch in journal " + file + ", ignoring the rest");
+                    break;
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                if(!readFully(in, body)) {
+                    log.warning("Torn batch at the end of journal " + file);
+                    break;
+                }
+                crc.reset();
+                crc.update(body.duplicate());
+                if(crc.getValue() != checksum) {
+                    log.warning("Checksum mismatch in journal " + file + ", ignoring the rest");
+                    break;
+                }
+                records += replayBatch(new SaveInput(body), objects, orphans);
+            }
+        }
+        return records;
+    }
+
+    private static int replayBatch(SaveInput in, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) throws IOException {
+        int records = 0;
+        int type;
+        while((type = in.readByte()) != RECORD_END) {
+            records++;
+            switch(type) {
+            case RECORD_OBJECT: {
+                Map.Entry<SLObject, Long> record = World.readObjectRecord(in);
+                SLObject obj = record.getKey();
+                SLObject old = objects.put(obj.getSerial(), obj);
+                if(old != null) {
+                    // equal by serial, so the key object must be replaced explicitly
+                    orphans.remove(old);
+                }
+                orphans.put(obj, record.getValue());
+                break;
+            }
+            case RECORD_PLACEMENT: {
+                SLObject obj = objects.get(in.readLong());
+                long parentSerial = in.readLong();
+                Point3D loc = null;
+                if(in.readBoolean()) {
+                    int x = in.readShort() & 0xFFFF;
+                    int y = in.readShort() & 0xFFFF;
+                    loc = new Point3D(x, y, in.readByte());
+                }
+                if(obj != null) {
+                    obj.setLocation(loc);
+                    orphans.put(obj, parentSerial);
+                }
+                break;
+            }
+            case RECORD_ATTRIBUTES: {
+                SLObject obj = objects.get(in.readLong());
+                int count = in.readInt();
+                for(int i = 0; i < count; i++) {
+                    Attribute attr = in.readEnum(Attribute.class);
+                    long value = in.readLong();
+                    if(obj instanceof Mobile) {
+                        ((Mobile) obj).restoreAttribute(attr, value);
+                    }
+                }
+                break;
+            }
+            case RECORD_DELETE: {
+                SLObject obj = objects.remove(in.readLong());
+                if(obj != null) {
+                    orphans.remove(obj);
+                }
+                break;
+            }
+            default:
+                throw new IOException("invalid journal record type " + type);
+            }
+        }
+        in.finish();
+        return records;
+    }
+
+    // false if the file ends before the buffer is full
+    private static boolean readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            if(in.read(buffer) < 0) {
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static List<Long> findGenerations(String savePath, long firstGeneration) {
+        List<Long> res = new ArrayList<Long>();
+        String[] names = new File(savePath).list();
+        if(names == null) {
+            return res;
+        }
+        for(String name : names) {
+            if(!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                long gen = Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+                if(gen >= firstGeneration) {
+                    res.add(gen);
+                }
+            } catch(NumberFormatException e) {
+                continue;
+            }
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    private static File fileFor(String savePath, long generation) {
+        return new File(savePath + "/" + FILE_PREFIX + generation + FILE_SUFFIX);
+    }
+
+    private void openFile(long gen) throws IOException {
+        closeFile();
+        File file = fileFor(savePath, gen);
+        boolean exists = file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if(!exists) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(MAGIC);
+            header.putInt(SaveInput.VERSION);
+            header.flip();
+            while(header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+        openGeneration = gen;
+    }
+
+    private void closeFile() {
+        if(channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch(IOException e) {
+            log.log(Level.WARNING, "Couldn't close journal: " + e.getMessage(), e);
+        }
+        channel = null;
+        openGeneration = -1;
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// open addressing hash table from serials to objects without boxed keys.
+// Writers must be serialized by the owner, readers don't need any lock:
+// a slot's key never changes once it was set, removing only replaces the
+// value with a tombstone, and growing publishes a completely new table.
+// Key 0 marks empty slots, so a value for serial 0 (e.g. a static in the
+// data files) is kept in its own field.
+class LongObjectTable<V> {
+    private static final Object REMOVED = new Object();
+    private static final int MIN_CAPACITY = 1024;
+    private volatile Slots slots;
+    private volatile Object zeroValue;
+    private int size, usedSlots;
+
+    private static class Slots {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<Object> values;
+        final int mask;
+
+        Slots(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<Object>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    public LongObjectTable(int expectedSize) {
+        this.slots = new Slots(capacityFor(expectedSize));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if(key == 0) {
+            return (V) zeroValue;
+        }
+        Slots s = slots;
+        int i = indexFor(key, s.mask);
+        while(true) {
+            long k = s.keys.get(i);
+            if(k == key) {
+                Object value = s.values.get(i);
+                return value == REMOVED ? null : (V) value;
+            } else if(k == 0) {
+                return null;
+            }
+            i = (i + 1) & s.mask;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    // returns the previous value
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null) {
+            throw new IllegalArgumentException("value must be set");
+        }
+        if(key == 0) {
+            Object old = zeroValue;
+            zeroValue = value;
+            if(old == null) {
+                size++;
+            }
+            return (V) old;
+        }
+        Slots s = slots;
+        int i = indexFor(key, s.mask);
+        while(true) {
+            long k = s.keys.get(i);
+            if(k == key) {
+                Object old = s.values.getAndSet(i, value);
+                if(old == REMOVED) {
+                    size++;
+                    return null;
+                }
+                return (V) old;
+            } else if(k == 0) {
+                // value first so readers that see the key also see the value
+                s.values.set(i, value);
+                s.keys.set(i, key);
+                size++;
+                usedSlots++;
+                if(usedSlots * 4 > s.keys.length() * 3) {
+                    rehash();
+                }
+                return null;
+            }
+            i = (i + 1) & s.mask;
+        }
+    }
+
+    // returns the removed value
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if(key == 0) {
+            Object old = zeroValue;
+            zeroValue = null;
+            if(old != null) {
+                size--;
+            }
+            return (V) old;
+        }
+        Slots s = slots;
+        int i = indexFor(key, s.mask);
+        while(true) {
+            long k = s.keys.get(i);
+            if(k == key) {
+                Object old = s.values.getAndSet(i, REMOVED);
+                if(old == REMOVED) {
+                    return null;
+                }
+                size--;
+                return (V) old;
+            } else if(k == 0) {
+                return null;
+            }
+            i = (i + 1) & s.mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // weakly consistent, concurrent changes may or may not be seen
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super V> consumer) {
+        Object zero = zeroValue;
+        if(zero != null) {
+            consumer.accept((V) zero);
+        }
+        Slots s = slots;
+        for(int i = 0; i < s.keys.length(); i++) {
+            Object value = s.values.get(i);
+            if(value != null && value != REMOVED) {
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    // builds a new table without the tombstones, doubling the capacity if needed
+    private void rehash() {
+        Slots old = slots;
+        int slotCount = (zeroValue != null) ? size - 1 : size;
+        Slots s = new Slots(capacityFor(slotCount));
+        for(int i = 0; i < old.keys.length(); i++) {
+            Object value = old.values.get(i);
+            if(value == null || value == REMOVED) {
+                continue;
+            }
+            long key = old.keys.get(i);
+            int j = indexFor(key, s.mask);
+            while(s.keys.get(j) != 0) {
+                j = (j + 1) & s.mask;
+            }
+            s.values.set(j, value);
+            s.keys.set(j, key);
+        }
+        usedSlots = slotCount;
+        slots = s;
+    }
+
+    // keeps the load factor at 0.5 after building a table
+    private static int capacityFor(int count) {
+        int capacity = MIN_CAPACITY;
+        while(capacity < count * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // serials are mostly sequential, mix them so neighbours don't form clusters
+    private static int indexFor(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
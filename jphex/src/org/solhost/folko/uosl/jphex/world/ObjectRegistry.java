@@ -20,8 +20,12 @@ package org.solhost.folko.uosl.jphex.world;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import org.solhost.folko.uosl.jphex.types.Item;
@@ -29,56 +33,64 @@ import org.solhost.folko.uosl.jphex.types.Mobile;
 import org.solhost.folko.uosl.jphex.types.Player;
 import org.solhost.folko.uosl.jphex.types.SLObject;
 import org.solhost.folko.uosl.libuosl.data.SLStatic;
+import org.solhost.folko.uosl.libuosl.data.SLStatics;
 import org.solhost.folko.uosl.libuosl.types.Items;
 import org.solhost.folko.uosl.libuosl.types.Mobiles;
 
 // singleton that provides serial lookup and registration
 // it contains all objects that appear in the game
+// lookups don't lock, only registering and removing objects is synchronized
 public class ObjectRegistry {
     private static final Logger log = Logger.getLogger("jphex.registry");
     private static ObjectRegistry instance;
     private final CopyOnWriteArraySet<SerialObserver> observers;
-    private final Map<Long, SLObject> objects;
-    private final Map<Long, SLStatic> statics;
-    private long nextItemSerial, nextMobileSerial;
+    private final LongObjectTable<SLObject> objects;
+    private final LongObjectTable<SLStatic> statics;
+    private final Map<String, Player> playersByName; // lower case names
+    private final AtomicLong nextItemSerial, nextMobileSerial;
 
     public interface SerialObserver {
         public void onObjectRegistered(SLObject object);
     }
 
-    private ObjectRegistry(Map<Long, SLStatic> statics, Map<Long, SLObject> objects) {
+    private ObjectRegistry(SLStatics staticsFile, Map<Long, SLObject> loadedObjects) {
         this.observers = new CopyOnWriteArraySet<SerialObserver>();
-        this.statics = statics;
-        this.objects = objects;
-        this.nextItemSerial = Items.SERIAL_FIRST;
-        this.nextMobileSerial = Mobiles.SERIAL_FIRST;
+        this.statics = new LongObjectTable<SLStatic>(0);
+        this.objects = new LongObjectTable<SLObject>(loadedObjects.size());
+        this.playersByName = new ConcurrentHashMap<String, Player>();
+        long[] nextSerials = {Items.SERIAL_FIRST, Mobiles.SERIAL_FIRST};
 
         // count stuff so we know the next free serials
-        for(SLStatic stat : statics.values()) {
+        staticsFile.forEachStatic(stat -> {
             long serial = stat.getSerial();
-            if(serial >= nextItemSerial) {
-                nextItemSerial = serial + 1;
+            statics.put(serial, stat);
+            if(serial >= nextSerials[0]) {
+                nextSerials[0] = serial + 1;
             }
-        }
+        });
 
-        for(SLObject obj : objects.values()) {
+        for(SLObject obj : loadedObjects.values()) {
+            objects.put(obj.getSerial(), obj);
+            indexPlayer(obj);
             long serial = obj.getSerial();
             if(obj instanceof Mobile) {
-                if(serial >= nextMobileSerial) {
-                    nextMobileSerial = serial + 1;
+                if(serial >= nextSerials[1]) {
+                    nextSerials[1] = serial + 1;
                 }
             } else if(obj instanceof Item) {
-                if(serial >= nextItemSerial) {
-                    nextItemSerial = serial + 1;
+                if(serial >= nextSerials[0]) {
+                    nextSerials[0] = serial + 1;
                 }
             }
         }
+        this.nextItemSerial = new AtomicLong(nextSerials[0]);
+        this.nextMobileSerial = new AtomicLong(nextSerials[1]);
         log.config(String.format("Initialized with %d dynamic and %d static objects", objects.size(), statics.size()));
-        log.fine(String.format("Next item serial 0x%08X, next mobile serial 0x%08X", nextItemSerial, nextMobileSerial));
+        log.fine(String.format("Next item serial 0x%08X, next mobile serial 0x%08X", nextItemSerial.get(), nextMobileSerial.get()));
     }
 
     // set next usable item and mobile serials
-    public static void init(Map<Long, SLStatic> statics, Map<Long, SLObject> objects) {
+    public static void init(SLStatics statics, Map<Long, SLObject> objects) {
         if(instance != null) {
             throw new UnsupportedOperationException("already initialized");
         }
@@ -96,12 +108,37 @@ public class ObjectRegistry {
         observers.add(observer);
     }
 
-    public synchronized long registerItemSerial() {
-        return nextItemSerial++;
+    public long registerItemSerial() {
+        return reserveItemSerials(1);
+    }
+
+    public long registerMobileSerial() {
+        return reserveMobileSerials(1);
+    }
+
+    // reserves count consecutive serials for bulk creation and returns the first one
+    public long reserveItemSerials(int count) {
+        return reserve(nextItemSerial, count, Items.SERIAL_LAST);
+    }
+
+    public long reserveMobileSerials(int count) {
+        return reserve(nextMobileSerial, count, Mobiles.SERIAL_LAST);
     }
 
-    public synchronized long registerMobileSerial() {
-        return nextMobileSerial++;
+    private static long reserve(AtomicLong next, int count, long last) {
+        if(count < 1) {
+            throw new IllegalArgumentException("invalid serial count: " + count);
+        }
+        // only advance if the whole block fits, a failed reservation must not use up serials
+        while(true) {
+            long first = next.get();
+            if(first + count - 1 > last) {
+                throw new IllegalStateException(String.format("out of serials, can't reserve %d at %08X", count, first));
+            }
+            if(next.compareAndSet(first, first + count)) {
+                return first;
+            }
+        }
     }
 
     public synchronized void registerObject(SLObject object) {
@@ -115,12 +152,13 @@ public class ObjectRegistry {
             log.warning(String.format("attempt to register object twice prevented: %08X", serial));
         }
         objects.put(serial, object);
+        indexPlayer(object);
         for(SerialObserver o : observers) {
             o.onObjectRegistered(object);
         }
     }
 
-    public synchronized Item findItem(long serial) {
+    public Item findItem(long serial) {
         SLObject obj = objects.get(serial);
         if(obj instanceof Item) {
             return (Item) obj;
@@ -129,7 +167,7 @@ public class ObjectRegistry {
         }
     }
 
-    public synchronized Mobile findMobile(long serial) {
+    public Mobile findMobile(long serial) {
         SLObject obj = objects.get(serial);
         if(obj instanceof Mobile) {
             return (Mobile) obj;
@@ -138,20 +176,11 @@ public class ObjectRegistry {
         }
     }
 
-    public synchronized Player findPlayer(String name) {
-        for(SLObject obj : objects.values()) {
-            String objName = obj.getName();
-            if(!(obj instanceof Player) || objName == null)  {
-                continue;
-            }
-            if(objName.toLowerCase().equals(name.toLowerCase())) {
-                return (Player) obj;
-            }
-        }
-        return null;
+    public Player findPlayer(String name) {
+        return playersByName.get(name.toLowerCase());
     }
 
-    public synchronized Player findPlayer(long serial) {
+    public Player findPlayer(long serial) {
         SLObject obj = objects.get(serial);
         if(obj instanceof Player) {
             return (Player) obj;
@@ -160,21 +189,65 @@ public class ObjectRegistry {
         }
     }
 
-    public synchronized SLObject findObject(long serial) {
+    public SLObject findObject(long serial) {
         return objects.get(serial);
     }
 
     // only World should use this, others should do object.delete(), hence package-private
     synchronized void removeObject(long serial) {
-        objects.remove(serial);
+        SLObject obj = objects.remove(serial);
+        if(obj instanceof Player) {
+            unindexPlayer((Player) obj, obj.getName());
+        }
+    }
+
+    // World calls this when a player was renamed
+    synchronized void updatePlayerName(Player player, String oldName) {
+        unindexPlayer(player, oldName);
+        if(!player.isDeleted() && objects.get(player.getSerial()) == player) {
+            indexPlayer(player);
+        }
+    }
+
+    private void indexPlayer(SLObject obj) {
+        if(obj instanceof Player && obj.getName() != null) {
+            playersByName.putIfAbsent(obj.getName().toLowerCase(), (Player) obj);
+        }
+    }
+
+    // names are only unique up to case when creating a character, scripts can rename
+    // a player to the name of another one. Only the first is indexed, so the other one
+    // has to take over the entry when it goes away. Rare enough to scan all objects.
+    private void unindexPlayer(Player player, String name) {
+        if(name == null) {
+            return;
+        }
+        String key = name.toLowerCase();
+        if(!playersByName.remove(key, player)) {
+            return;
+        }
+        objects.forEach(obj -> {
+            if(obj instanceof Player && !obj.isDeleted() && obj.getName() != null && obj.getName().toLowerCase().equals(key)) {
+                playersByName.putIfAbsent(key, (Player) obj);
+            }
+        });
+    }
+
+    // doesn't lock or copy anything: objects that are registered or removed
+    // while visiting may or may not be seen, but no object is visited twice.
+    public void forEachObject(Consumer<? super SLObject> visitor) {
+        objects.forEach(visitor);
     }
 
-    // only World should use this, others should have a serial reference or something
+    // Copies all objects. Only for startup where scripts can register new objects
+    // while iterating, everything else should use forEachObject.
     synchronized Collection<SLObject> allObjects() {
-        return new ArrayList<SLObject>(objects.values());
+        List<SLObject> res = new ArrayList<SLObject>(objects.size());
+        objects.forEach(res::add);
+        return res;
     }
 
-    public synchronized SLStatic findStatic(long serial) {
+    public SLStatic findStatic(long serial) {
         return statics.get(serial);
     }
 
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Binary save file:
+//   header: int magic, int version, long body length, long CRC32 of the body
+//   body: whatever the writer put there, all numbers are big endian
+// The body is read through a direct buffer and checksummed on the fly,
+// finish() verifies the checksum after everything has been read.
+// Bodies that are already in memory, e.g. journal records, can be read without header.
+public class SaveInput implements AutoCloseable {
+    public static final int MAGIC = 0x4A504858; // "JPHX"
+    // 2: journal generation at start of body, 3: objects in chunks that can be decoded in parallel
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 24;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32 checksum;
+    private final int version;
+    private final long bodyLength, expectedChecksum;
+    private long bodyRead;
+
+    public SaveInput(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.checksum = new CRC32();
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while(header.hasRemaining()) {
+                if(channel.read(header) < 0) {
+                    throw new EOFException("save file too short");
+                }
+            }
+            header.flip();
+            if(header.getInt() != MAGIC) {
+                throw new IOException("not a save file: " + file);
+            }
+            this.version = header.getInt();
+            if(version < 1 || version > VERSION) {
+                throw new IOException("unsupported save version " + version);
+            }
+            this.bodyLength = header.getLong();
+            this.expectedChecksum = header.getLong();
+            if(HEADER_SIZE + bodyLength != channel.size()) {
+                throw new IOException("save file is truncated or has trailing data");
+            }
+        } catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.limit(0);
+    }
+
+    // reads a body of the current version from memory, the caller checks its integrity
+    public SaveInput(ByteBuffer body) {
+        this.channel = null;
+        this.checksum = null;
+        this.version = VERSION;
+        this.buffer = body;
+        this.bodyLength = body.remaining();
+        this.bodyRead = bodyLength;
+        this.expectedChecksum = 0;
+    }
+
+    // version of the file so that readers can handle older layouts
+    public int getVersion() {
+        return version;
+    }
+
+    public int readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public short readShort() throws IOException {
+        ensure(2);
+        return buffer.getShort();
+    }
+
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    public String readString() throws IOException {
+        int length = readInt();
+        if(length < 0) {
+            return null;
+        } else if(length > bodyLength) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] data = new byte[length];
+        int pos = 0;
+        while(pos < length) {
+            ensure(1);
+            int len = Math.min(buffer.remaining(), length - pos);
+            buffer.get(data, pos, len);
+            pos += len;
+        }
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    // reads the next length bytes into a new heap buffer
+    public ByteBuffer readBlock(int length) throws IOException {
+        if(length < 0 || length > bodyLength) {
+            throw new IOException("invalid block length " + length);
+        }
+        ByteBuffer block = ByteBuffer.allocate(length);
+        while(block.hasRemaining()) {
+            ensure(1);
+            int len = Math.min(buffer.remaining(), block.remaining());
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + len);
+            block.put(slice);
+            buffer.position(buffer.position() + len);
+        }
+        block.flip();
+        return block;
+    }
+
+    public <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+        String name = readString();
+        if(name == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, name);
+        } catch(IllegalArgumentException e) {
+            throw new IOException("unknown " + type.getSimpleName() + ": " + name);
+        }
+    }
+
+    // must be called after reading everything, checks that the body was intact
+    public void finish() throws IOException {
+        if(bodyRead != bodyLength || buffer.hasRemaining()) {
+            throw new IOException("save file has unread data");
+        }
+        if(checksum != null && checksum.getValue() != expectedChecksum) {
+            throw new IOException("save file checksum mismatch");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(channel != null) {
+            channel.close();
+        }
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining() >= bytes) {
+            return;
+        } else if(channel == null) {
+            throw new EOFException("unexpected end of data");
+        }
+        buffer.compact();
+        while(buffer.position() < bytes) {
+            long left = bodyLength - bodyRead;
+            if(left <= 0) {
+                throw new EOFException("unexpected end of save file");
+            }
+            int start = buffer.position();
+            if(buffer.remaining() > left) {
+                buffer.limit(start + (int) left);
+            }
+            int read = channel.read(buffer);
+            if(read < 0) {
+                throw new EOFException("unexpected end of save file");
+            }
+            buffer.limit(buffer.capacity());
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.position(start);
+            chunk.limit(start + read);
+            checksum.update(chunk);
+            bodyRead += read;
+        }
+        buffer.flip();
+    }
+}
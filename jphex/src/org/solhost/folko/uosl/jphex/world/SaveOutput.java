@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Writes a save file in the binary format described in SaveInput. Either streamed
+// through a direct buffer into a temporary file that replaces the real file in finish(),
+// or collected in memory as a snapshot that can be written later by another thread.
+public class SaveOutput implements AutoCloseable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private final File file, tempFile;
+    private final FileChannel channel;
+    private final List<ByteBuffer> chunks; // in memory mode only
+    private final int chunkSize;
+    private ByteBuffer buffer;
+    private final CRC32 checksum;
+    private long bodyLength;
+    private boolean finished;
+
+    public SaveOutput(File file) throws IOException {
+        this.file = file;
+        this.tempFile = tempFileFor(file);
+        this.channel = openTempFile(tempFile);
+        this.chunks = null;
+        this.chunkSize = BUFFER_SIZE;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.checksum = new CRC32();
+    }
+
+    private SaveOutput(int chunkSize) {
+        this.file = null;
+        this.tempFile = null;
+        this.channel = null;
+        this.chunks = new ArrayList<ByteBuffer>();
+        this.chunkSize = chunkSize;
+        this.buffer = ByteBuffer.allocate(chunkSize);
+        this.checksum = new CRC32();
+    }
+
+    // collects the body in memory, finish with writeTo
+    public static SaveOutput inMemory() {
+        return new SaveOutput(BUFFER_SIZE);
+    }
+
+    // for small amounts of data, e.g. journal records
+    public static SaveOutput inMemory(int chunkSize) {
+        return new SaveOutput(chunkSize);
+    }
+
+    public void writeByte(int b) throws IOException {
+        ensure(1);
+        buffer.put((byte) b);
+    }
+
+    public void writeBoolean(boolean b) throws IOException {
+        writeByte(b ? 1 : 0);
+    }
+
+    public void writeShort(int s) throws IOException {
+        ensure(2);
+        buffer.putShort((short) s);
+    }
+
+    public void writeInt(int i) throws IOException {
+        ensure(4);
+        buffer.putInt(i);
+    }
+
+    public void writeLong(long l) throws IOException {
+        ensure(8);
+        buffer.putLong(l);
+    }
+
+    // UTF-8 with length prefix, null is allowed
+    public void writeString(String str) throws IOException {
+        if(str == null) {
+            writeInt(-1);
+            return;
+        }
+        byte[] data = str.getBytes(StandardCharsets.UTF_8);
+        writeInt(data.length);
+        int pos = 0;
+        while(pos < data.length) {
+            ensure(1);
+            int len = Math.min(buffer.remaining(), data.length - pos);
+            buffer.put(data, pos, len);
+            pos += len;
+        }
+    }
+
+    // appends the body of an in memory output, e.g. a chunk that was encoded separately
+    public void write(SaveOutput other) throws IOException {
+        other.flushSnapshot();
+        for(ByteBuffer chunk : other.chunks) {
+            ByteBuffer data = chunk.duplicate();
+            while(data.hasRemaining()) {
+                ensure(1);
+                int len = Math.min(buffer.remaining(), data.remaining());
+                ByteBuffer slice = data.duplicate();
+                slice.limit(slice.position() + len);
+                buffer.put(slice);
+                data.position(data.position() + len);
+            }
+        }
+    }
+
+    public <E extends Enum<E>> void writeEnum(E value) throws IOException {
+        writeString(value == null ? null : value.name());
+    }
+
+    // writes the header and moves the file to its real name
+    public void finish() throws IOException {
+        if(channel == null) {
+            throw new IllegalStateException("in memory save, use writeTo");
+        }
+        flush();
+        finish(channel, tempFile, file);
+        finished = true;
+    }
+
+    // in memory mode: finishes the snapshot and writes it to the given file, the snapshot
+    // must not be written to anymore but this can run in another thread. Returns the file size.
+    public long writeTo(File target) throws IOException {
+        File temp = tempFileFor(target);
+        FileChannel out = openTempFile(temp);
+        try {
+            writeBodyTo(out);
+            finish(out, temp, target);
+        } finally {
+            if(out.isOpen()) {
+                out.close();
+                Files.deleteIfExists(temp.toPath());
+            }
+        }
+        return SaveInput.HEADER_SIZE + bodyLength;
+    }
+
+    // in memory mode: writes just the body without a header
+    public void writeBodyTo(FileChannel out) throws IOException {
+        flushSnapshot();
+        for(ByteBuffer chunk : chunks) {
+            ByteBuffer data = chunk.duplicate();
+            while(data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
+
+    // in memory mode: checksum of the body
+    public long getChecksum() throws IOException {
+        flushSnapshot();
+        return checksum.getValue();
+    }
+
+    public long getBodyLength() {
+        return bodyLength + buffer.position();
+    }
+
+    // without finish, the temporary file is deleted and the old save stays intact
+    @Override
+    public void close() throws IOException {
+        if(finished || channel == null) {
+            return;
+        }
+        channel.close();
+        Files.deleteIfExists(tempFile.toPath());
+    }
+
+    private void flushSnapshot() throws IOException {
+        if(chunks == null) {
+            throw new IllegalStateException("not an in memory save");
+        }
+        if(buffer.position() > 0) {
+            flush();
+        }
+    }
+
+    private static File tempFileFor(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    private static FileChannel openTempFile(File temp) throws IOException {
+        FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        // the header is written in the end when the checksum is known
+        channel.position(SaveInput.HEADER_SIZE);
+        return channel;
+    }
+
+    private void finish(FileChannel out, File temp, File target) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SaveInput.HEADER_SIZE);
+        header.putInt(SaveInput.MAGIC);
+        header.putInt(SaveInput.VERSION);
+        header.putLong(bodyLength);
+        header.putLong(checksum.getValue());
+        header.flip();
+        while(header.hasRemaining()) {
+            out.write(header, header.position());
+        }
+        out.force(true);
+        out.close();
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        bodyLength += buffer.remaining();
+        checksum.update(buffer.duplicate());
+        if(chunks != null) {
+            // keep the full buffer as a chunk of the snapshot and continue in a new one
+            chunks.add(buffer);
+            buffer = ByteBuffer.allocate(chunkSize);
+            return;
+        }
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
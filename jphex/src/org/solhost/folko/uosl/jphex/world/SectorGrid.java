@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.jphex.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.solhost.folko.uosl.jphex.types.SLObject;
+import org.solhost.folko.uosl.libuosl.data.SLMap;
+import org.solhost.folko.uosl.libuosl.types.Point2D;
+
+// spatial index that sorts objects into the 8x8 cells of the map
+// so that range queries only have to look at nearby cells.
+// not thread-safe, the owner must synchronize access
+class SectorGrid<T extends SLObject> {
+    private static final int CELLS_PER_ROW = SLMap.MAP_WIDTH / 8;
+    private final Set<T>[] cells;
+    private final Map<T, Integer> indexedCell;
+    private final List<Runnable> deferredChanges;
+    private int visitDepth;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SectorGrid() {
+        this.cells = new Set[SLMap.CELL_COUNT];
+        this.indexedCell = new HashMap<T, Integer>();
+        this.deferredChanges = new ArrayList<Runnable>();
+    }
+
+    // puts the object into the cell of the given location, null removes it
+    public void update(T obj, Point2D where) {
+        if(where == null) {
+            remove(obj);
+            return;
+        }
+
+        if(visitDepth > 0) {
+            // a visitor caused this, e.g. by disconnecting a client -> apply after visiting
+            deferredChanges.add(() -> update(obj, where));
+            return;
+        }
+
+        int newCell = cellOf(where.getX(), where.getY());
+        Integer oldCell = indexedCell.put(obj, newCell);
+        if(oldCell != null) {
+            if(oldCell == newCell) {
+                return;
+            }
+            removeFromCell(obj, oldCell);
+        }
+
+        Set<T> cell = cells[newCell];
+        if(cell == null) {
+            cell = new HashSet<T>();
+            cells[newCell] = cell;
+        }
+        cell.add(obj);
+    }
+
+    public void remove(T obj) {
+        if(visitDepth > 0) {
+            deferredChanges.add(() -> remove(obj));
+            return;
+        }
+
+        Integer oldCell = indexedCell.remove(obj);
+        if(oldCell != null) {
+            removeFromCell(obj, oldCell);
+        }
+    }
+
+    public boolean contains(T obj) {
+        return indexedCell.containsKey(obj);
+    }
+
+    public int size() {
+        return indexedCell.size();
+    }
+
+    // visits all objects within range without creating a result collection,
+    // changes to the grid caused by the visitor are applied after visiting
+    public void forEachInRange(Point2D point, int range, Consumer<? super T> visitor) {
+        forEachInArea(point, range, 0, SLMap.MAP_WIDTH - 1, 0, SLMap.MAP_HEIGHT - 1, visitor);
+    }
+
+    // same as forEachInRange, but only looks at the cells that intersect the given rectangle,
+    // e.g. the strip that became visible after a step. Objects outside the rectangle but
+    // in the same cells can still be visited.
+    public void forEachInArea(Point2D point, int range, int minX, int maxX, int minY, int maxY, Consumer<? super T> visitor) {
+        int minCellX = Math.max(Math.max(0, minX), point.getX() - range) / 8;
+        int maxCellX = Math.min(Math.min(SLMap.MAP_WIDTH - 1, maxX), point.getX() + range) / 8;
+        int minCellY = Math.max(Math.max(0, minY), point.getY() - range) / 8;
+        int maxCellY = Math.min(Math.min(SLMap.MAP_HEIGHT - 1, maxY), point.getY() + range) / 8;
+        if(minCellX > maxCellX || minCellY > maxCellY) {
+            return;
+        }
+
+        visitDepth++;
+        try {
+            for(int cellX = minCellX; cellX <= maxCellX; cellX++) {
+                for(int cellY = minCellY; cellY <= maxCellY; cellY++) {
+                    Set<T> cell = cells[cellX * CELLS_PER_ROW + cellY];
+                    if(cell == null) {
+                        continue;
+                    }
+                    for(T obj : cell) {
+                        if(obj.inRange(point, range)) {
+                            visitor.accept(obj);
+                        }
+                    }
+                }
+            }
+        } finally {
+            visitDepth--;
+            if(visitDepth == 0 && !deferredChanges.isEmpty()) {
+                applyDeferredChanges();
+            }
+        }
+    }
+
+    public List<T> getInRange(Point2D point, int range) {
+        List<T> res = new ArrayList<T>();
+        forEachInRange(point, range, res::add);
+        return res;
+    }
+
+    private void applyDeferredChanges() {
+        List<Runnable> changes = new ArrayList<Runnable>(deferredChanges);
+        deferredChanges.clear();
+        for(Runnable change : changes) {
+            change.run();
+        }
+    }
+
+    // Point2D allows coordinates on the map border, clamp them into the last cell
+    private static int cellOf(int x, int y) {
+        return Point2D.getCellIndex(Math.min(x, SLMap.MAP_WIDTH - 1), Math.min(y, SLMap.MAP_HEIGHT - 1));
+    }
+
+    private void removeFromCell(T obj, int cellIndex) {
+        Set<T> cell = cells[cellIndex];
+        if(cell == null) {
+            return;
+        }
+        cell.remove(obj);
+        if(cell.isEmpty()) {
+            cells[cellIndex] = null;
+        }
+    }
+}
@@ -20,19 +20,30 @@ package org.solhost.folko.uosl.jphex.world;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.solhost.folko.uosl.common.RandUtil;
 import org.solhost.folko.uosl.jphex.engines.BulletinBoard;
@@ -47,14 +58,18 @@ import org.solhost.folko.uosl.jphex.world.ObjectRegistry.SerialObserver;
 import org.solhost.folko.uosl.libuosl.data.*;
 import org.solhost.folko.uosl.libuosl.network.packets.*;
 import org.solhost.folko.uosl.libuosl.types.*;
-import org.solhost.folko.uosl.libuosl.util.ObjectLister;
+import org.solhost.folko.uosl.libuosl.util.DynamicObjectLister;
 
-public class World implements ObjectObserver, SerialObserver, ObjectLister, TimeListener {
+public class World implements ObjectObserver, SerialObserver, DynamicObjectLister, TimeListener {
     public static final int VISIBLE_RANGE = 15;
     public static final int SPEECH_RANGE = 10;
     public static final int ENTER_AREA_RANGE = 5;
     public static final int STAT_REFRESH_DELAY = 1200;
     public static final int DECAY_MINUTES = 15;
+    public static final int DECAY_CHECK_MILLIS = 1000;
+    public static final int DECAY_BATCH_SIZE = 50; // max. items deleted per decay check
+    public static final int JOURNAL_FLUSH_MILLIS = 1000;
+    public static final int CHECKPOINT_MINUTES = 30;
 
     // Make an ingame day be one real hour
     public static final int SECONDS_PER_INGAME_HOUR = 150;
@@ -67,101 +82,425 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     public static final int RESURRECT_POSITION_X = 507;
     public static final int RESURRECT_POSITION_Y = 584;
 
+    // binary save and the Java serialization save that is only read to migrate it
+    public static final String SAVE_FILE = "save.bin";
+    public static final String LEGACY_SAVE_FILE = "save.ser";
+    private static final byte SAVE_TYPE_ITEM = 1, SAVE_TYPE_NPC = 2, SAVE_TYPE_PLAYER = 3;
+    private static final int SAVE_CHUNK_OBJECTS = 4096; // objects per independently decodable chunk
+
     private static final Logger log = Logger.getLogger("jphex.world");
     private final String savePath;
 
     private ObjectRegistry registry;
     private BulletinBoard board;
+    private Journal journal;
     private final Set<Player> onlinePlayers;
+    private final SectorGrid<SLObject> objectGrid; // mobiles and items on ground
+    private final SectorGrid<Player> playerGrid; // online players only
+    private final InterestManager interest; // what the online players' clients know
+    // flyweights for the most frequent packets, only used with the world lock held
+    private final SendObjectPacket objectPacket = new SendObjectPacket();
+    private final RemoveObjectPacket removePacket = new RemoveObjectPacket();
+    private final StatsUpdatePacket statsPacket = new StatsUpdatePacket();
+    private final DecayQueue decayQueue;
+    private final List<Item> decayingItems;
     private final DayNightCycle dayNightCycle;
+    private final ExecutorService saveExecutor;
+    private final AtomicBoolean backgroundSaveRunning;
+    private final Object saveFileLock;
+    private volatile String lastSaveStats;
+    private long decodeMillis, linkMillis, initMillis;
 
     private World(String savePath) {
         this.onlinePlayers = new HashSet<Player>();
+        this.objectGrid = new SectorGrid<SLObject>();
+        this.playerGrid = new SectorGrid<Player>();
+        this.interest = new InterestManager();
+        this.decayQueue = new DecayQueue();
+        this.decayingItems = new ArrayList<Item>();
         this.savePath = savePath;
         this.dayNightCycle = new DayNightCycle(this, SECONDS_PER_INGAME_HOUR);
+        this.saveExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "WorldSaver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.backgroundSaveRunning = new AtomicBoolean(false);
+        this.saveFileLock = new Object();
+        this.lastSaveStats = "no save yet";
     }
 
     public static World loadOrCreateNew(String savePath) throws Exception {
-        File file = new File(savePath + "/save.ser");
+        File file = new File(savePath + "/" + SAVE_FILE);
+        File legacyFile = new File(savePath + "/" + LEGACY_SAVE_FILE);
         World world = new World(savePath);
         Map<Long, SLObject> objects = new HashMap<Long, SLObject>();
         Map<SLObject, Long> orphans = new HashMap<SLObject, Long>();
-        if(!file.exists()) {
+        long startTime = System.currentTimeMillis();
+        long journalGeneration = 0;
+        if(file.exists()) {
+            log.config("Loading an existing save");
+            journalGeneration = loadSave(file, world, objects, orphans);
+        } else if(legacyFile.exists()) {
+            log.config("Loading a legacy save, it will be converted on the next save");
+            world.board = loadLegacySave(legacyFile, objects, orphans);
+        } else {
             log.config("Creating a fresh save");
             world.board = new BulletinBoard();
-        } else {
-            log.config("Loading an existing save");
-            FileInputStream saveFile = new FileInputStream(file);
-            ObjectInputStream objIn = new ObjectInputStream(saveFile);
-            int num = objIn.readInt();
-            for(int i = 0; i < num; i++) {
-                SLObject obj = (SLObject) objIn.readObject();
+        }
+        // changes since the save
+        journalGeneration = Journal.replay(savePath, journalGeneration, objects, orphans);
+        world.journal = new Journal(savePath, journalGeneration);
+        world.decodeMillis = System.currentTimeMillis() - startTime;
+        log.config(String.format("Read %d objects in %d ms", objects.size(), world.decodeMillis));
+
+        startTime = System.currentTimeMillis();
+        ObjectRegistry.init(SLData.get().getStatics(), objects);
+        world.registry = ObjectRegistry.get();
+        linkOrphans(world.registry, objects, orphans);
+        world.registry.forEachObject(world::updateGrid);
+        world.linkMillis = System.currentTimeMillis() - startTime;
+
+        world.registry.addObserver(world);
+        return world;
+    }
+
+    // returns the journal generation that has to be replayed on top of the save
+    private static long loadSave(File file, World world, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) throws IOException {
+        try(SaveInput in = new SaveInput(file)) {
+            long journalGeneration = 0;
+            if(in.getVersion() >= 2) {
+                journalGeneration = in.readLong();
+            }
+            int num = in.readInt();
+            List<Map.Entry<SLObject, Long>> records;
+            if(in.getVersion() >= 3) {
+                // read the chunks sequentially, but decode them in parallel
+                List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+                for(int read = 0; read < num; ) {
+                    int count = in.readInt();
+                    int length = in.readInt();
+                    chunks.add(in.readBlock(length));
+                    read += count;
+                }
+                try {
+                    records = chunks.parallelStream()
+                        .map(World::decodeChunk)
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList());
+                } catch(UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } else {
+                records = new ArrayList<Map.Entry<SLObject, Long>>(num);
+                for(int i = 0; i < num; i++) {
+                    records.add(readObjectRecord(in));
+                }
+            }
+            for(Map.Entry<SLObject, Long> record : records) {
+                SLObject obj = record.getKey();
                 objects.put(obj.getSerial(), obj);
-                long parentSerial = objIn.readLong();
-                orphans.put(obj, parentSerial);
+                orphans.put(obj, record.getValue());
             }
-            world.board = (BulletinBoard) objIn.readObject();
-            objIn.close();
-            saveFile.close();
+            world.board = new BulletinBoard();
+            world.board.readFields(in);
+            in.finish();
+            return journalGeneration;
         }
-        ObjectRegistry.init(SLData.get().getStatics().getAllStatics(), objects);
-        world.registry = ObjectRegistry.get();
+    }
 
-        for(SLObject orphan : orphans.keySet()) {
-            long parentSerial = orphans.get(orphan);
-            if(parentSerial == -1) {
-                continue;
+    private static List<Map.Entry<SLObject, Long>> decodeChunk(ByteBuffer chunk) {
+        List<Map.Entry<SLObject, Long>> res = new ArrayList<Map.Entry<SLObject, Long>>();
+        try {
+            SaveInput in = new SaveInput(chunk);
+            int count = in.readInt();
+            for(int i = 0; i < count; i++) {
+                res.add(readObjectRecord(in));
             }
+            in.finish();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res;
+    }
 
-            SLObject parent = world.registry.findObject(parentSerial);
-            if(parent == null) {
-                log.severe(String.format("Couldn't find parent %08X for %08X, deleting orphan", parentSerial, orphan.getSerial()));
-                world.registry.removeObject(orphan.getSerial());
-                orphan.delete();
-            } else {
-                parent.foundOrphan(orphan);
+    // Parents are resolved in parallel and grouped so that each parent gets all its
+    // children in one task, no two threads modify the same parent that way.
+    private static void linkOrphans(ObjectRegistry registry, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) {
+        Map<Long, List<SLObject>> childrenByParent = orphans.entrySet().parallelStream()
+            .filter(entry -> entry.getValue() != -1)
+            .collect(Collectors.groupingByConcurrent(Map.Entry::getValue,
+                     Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+
+        Queue<SLObject> lost = new ConcurrentLinkedQueue<SLObject>();
+        childrenByParent.entrySet().parallelStream().forEach(entry -> {
+            // only reading the map here, it's not modified before all tasks are done
+            SLObject parent = objects.get(entry.getKey());
+            for(SLObject child : entry.getValue()) {
+                if(parent == null) {
+                    lost.add(child);
+                } else {
+                    parent.foundOrphan(child);
+                }
             }
+        });
+
+        for(SLObject orphan : lost) {
+            log.severe(String.format("Couldn't find parent %08X for %08X, deleting orphan", orphans.get(orphan), orphan.getSerial()));
+            registry.removeObject(orphan.getSerial());
+            orphan.delete();
         }
+    }
 
-        world.registry.addObserver(world);
-        return world;
+    // object with the serial of its parent as value, -1 if it has no parent
+    static Map.Entry<SLObject, Long> readObjectRecord(SaveInput in) throws IOException {
+        byte type = (byte) in.readByte();
+        long serial = in.readLong();
+        long parentSerial = in.readLong();
+        SLObject obj;
+        switch(type) {
+        case SAVE_TYPE_ITEM:    obj = new Item(serial, 0); break;
+        case SAVE_TYPE_NPC:     obj = new NPC(serial); break;
+        case SAVE_TYPE_PLAYER:  obj = new Player(serial); break;
+        default:                throw new IOException(String.format("invalid object type %d for %08X", type, serial));
+        }
+        obj.readFields(in);
+        return new AbstractMap.SimpleEntry<SLObject, Long>(obj, parentSerial);
+    }
+
+    static void writeObjectRecord(SaveOutput out, SLObject obj) throws IOException {
+        if(obj instanceof Player) {
+            out.writeByte(SAVE_TYPE_PLAYER);
+        } else if(obj instanceof NPC) {
+            out.writeByte(SAVE_TYPE_NPC);
+        } else {
+            out.writeByte(SAVE_TYPE_ITEM);
+        }
+        out.writeLong(obj.getSerial());
+        SLObject parent = obj.getParent();
+        if(parent != null) {
+            out.writeLong(parent.getSerial());
+        } else {
+            out.writeLong(-1);
+        }
+        obj.writeFields(out);
     }
 
+    private static BulletinBoard loadLegacySave(File file, Map<Long, SLObject> objects, Map<SLObject, Long> orphans) throws Exception {
+        FileInputStream saveFile = new FileInputStream(file);
+        ObjectInputStream objIn = new ObjectInputStream(saveFile);
+        int num = objIn.readInt();
+        for(int i = 0; i < num; i++) {
+            SLObject obj = (SLObject) objIn.readObject();
+            objects.put(obj.getSerial(), obj);
+            long parentSerial = objIn.readLong();
+            orphans.put(obj, parentSerial);
+        }
+        BulletinBoard board = (BulletinBoard) objIn.readObject();
+        objIn.close();
+        saveFile.close();
+        return board;
+    }
+
+    // saves while the world is stopped, e.g. when shutting down
     public synchronized boolean save() {
         log.info("Saving world state...");
         broadcast("Saving world state...");
-        try {
-            FileOutputStream saveFile = new FileOutputStream(savePath + "/save.ser", false);
-            ObjectOutputStream objOut = new ObjectOutputStream(saveFile);
-            Collection<SLObject> all = registry.allObjects();
-            objOut.writeInt(all.size());
-            for(SLObject obj : all) {
-                objOut.writeObject(obj);
-                SLObject parent = obj.getParent();
-                if(parent != null) {
-                    objOut.writeLong(obj.getParent().getSerial());
-                } else {
-                    objOut.writeLong(-1);
-                }
+        long startTime = System.currentTimeMillis();
+        int count;
+        long bytes;
+        synchronized(saveFileLock) {
+            try(SaveOutput out = new SaveOutput(new File(savePath + "/" + SAVE_FILE))) {
+                long journalGeneration = journal.startGeneration();
+                journal.writePending();
+                count = writeWorld(out, journalGeneration);
+                bytes = SaveInput.HEADER_SIZE + out.getBodyLength();
+                out.finish();
+                journal.deleteBefore(journalGeneration);
+            } catch (IOException e) {
+                log.log(Level.SEVERE, "Error saving world: " + e.getMessage(), e);
+                return false;
             }
-            objOut.writeObject(board);
-            objOut.close();
-            saveFile.close();
-        } catch (IOException e) {
-            log.log(Level.SEVERE, "Error saving world: " + e.getMessage(), e);
-            return false;
         }
+        long duration = System.currentTimeMillis() - startTime;
+        lastSaveStats = String.format("%d objects, %d bytes in %d ms, world stopped during the whole save", count, bytes, duration);
+        log.info("Saved " + lastSaveStats);
         broadcast("Done saving");
         return true;
     }
 
+    // The world is only stopped while its state is copied into an in-memory snapshot,
+    // the snapshot is written to disk by the save thread while the game continues.
+    public boolean saveInBackground() {
+        if(!backgroundSaveRunning.compareAndSet(false, true)) {
+            log.warning("Not saving: a background save is still running");
+            return false;
+        }
+
+        broadcast("Saving world state...");
+        SaveOutput snapshot = SaveOutput.inMemory();
+        long pause, startTime = System.currentTimeMillis();
+        int count;
+        long journalGeneration;
+        synchronized(this) {
+            long pauseStart = System.nanoTime();
+            try {
+                journalGeneration = journal.startGeneration();
+                count = writeWorld(snapshot, journalGeneration);
+            } catch(IOException e) {
+                // can't happen in memory
+                log.log(Level.SEVERE, "Error creating save snapshot: " + e.getMessage(), e);
+                backgroundSaveRunning.set(false);
+                return false;
+            }
+            pause = (System.nanoTime() - pauseStart) / 1000000;
+        }
+
+        saveExecutor.execute(() -> {
+            try {
+                long bytes;
+                synchronized(saveFileLock) {
+                    journal.writePending();
+                    bytes = snapshot.writeTo(new File(savePath + "/" + SAVE_FILE));
+                    journal.deleteBefore(journalGeneration);
+                }
+                long duration = System.currentTimeMillis() - startTime;
+                lastSaveStats = String.format("%d objects, %d bytes in %d ms, world stopped for %d ms", count, bytes, duration, pause);
+                log.info("Saved " + lastSaveStats);
+                broadcast("Done saving");
+            } catch(IOException e) {
+                log.log(Level.SEVERE, "Error saving world: " + e.getMessage(), e);
+            } finally {
+                backgroundSaveRunning.set(false);
+            }
+        });
+        return true;
+    }
+
+    public String getLastSaveStats() {
+        return lastSaveStats;
+    }
+
+    // must hold the world lock, returns the number of objects written
+    private int writeWorld(SaveOutput out, long journalGeneration) throws IOException {
+        // the total comes first, so encode the chunks before writing anything
+        List<SaveOutput> chunks = new ArrayList<SaveOutput>();
+        int[] total = new int[1];
+        try {
+            registry.forEachObject(obj -> {
+                if(total[0] % SAVE_CHUNK_OBJECTS == 0) {
+                    chunks.add(SaveOutput.inMemory(64 * 1024));
+                }
+                try {
+                    writeObjectRecord(chunks.get(chunks.size() - 1), obj);
+                } catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                total[0]++;
+            });
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        out.writeLong(journalGeneration);
+        out.writeInt(total[0]);
+        for(int i = 0; i < chunks.size(); i++) {
+            SaveOutput chunk = chunks.get(i);
+            int count = Math.min(SAVE_CHUNK_OBJECTS, total[0] - i * SAVE_CHUNK_OBJECTS);
+            out.writeInt(count);
+            // the block repeats the count so that it can be decoded on its own
+            out.writeInt(4 + (int) chunk.getBodyLength());
+            out.writeInt(count);
+            out.write(chunk);
+        }
+        board.writeFields(out);
+        return total[0];
+    }
+
+    public String getLoadTimings() {
+        return String.format("world decode %d ms, linking %d ms, init %d ms", decodeMillis, linkMillis, initMillis);
+    }
+
+    // Collects the changes of the last JOURNAL_FLUSH_MILLIS under the world lock,
+    // they are written by the save thread. Full saves are checkpoints that compact the journal.
+    private void startJournalTimers() {
+        Runnable flush = new Runnable() {
+            public void run() {
+                flushJournal();
+                TimerQueue.get().addTimer(new Timer(JOURNAL_FLUSH_MILLIS, this));
+            }
+        };
+        TimerQueue.get().addTimer(new Timer(JOURNAL_FLUSH_MILLIS, flush));
+
+        Runnable checkpoint = new Runnable() {
+            public void run() {
+                saveInBackground();
+                TimerQueue.get().addTimer(new Timer(CHECKPOINT_MINUTES * 60 * 1000, this));
+            }
+        };
+        TimerQueue.get().addTimer(new Timer(CHECKPOINT_MINUTES * 60 * 1000, checkpoint));
+    }
+
+    private void flushJournal() {
+        synchronized(this) {
+            try {
+                journal.collect();
+            } catch(IOException e) {
+                log.log(Level.SEVERE, "Error collecting journal records: " + e.getMessage(), e);
+                return;
+            }
+        }
+        saveExecutor.execute(() -> {
+            try {
+                journal.writePending();
+            } catch(IOException e) {
+                log.log(Level.SEVERE, "Error writing journal: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Writes the changes that haven't been flushed yet and closes the journal, called when
+    // shutting down. The save thread is a daemon, so this waits until it's done writing.
+    public void shutdown() {
+        synchronized(this) {
+            try {
+                journal.collect();
+            } catch(IOException e) {
+                log.log(Level.SEVERE, "Error collecting journal records: " + e.getMessage(), e);
+            }
+        }
+        // queued behind a background save that might still be running
+        Future<?> done = saveExecutor.submit(() -> {
+            try {
+                journal.writePending();
+            } finally {
+                journal.close();
+            }
+            return null;
+        });
+        try {
+            done.get();
+        } catch(ExecutionException e) {
+            log.log(Level.SEVERE, "Error writing journal: " + e.getCause().getMessage(), e.getCause());
+        } catch(InterruptedException e) {
+            log.warning("Interrupted while writing the journal");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getJournalBytesWritten() {
+        return journal.getBytesWritten();
+    }
+
     // must be called after creating a new world or after loading a world, do initialization here
     // scripts must be able to execute when calling this
     public synchronized void init() {
+        long startTime = System.currentTimeMillis();
         for(SLObject obj : registry.allObjects()) {
             obj.onLoad();
             if(obj.isDeleted()) {
                 registry.removeObject(obj.getSerial());
+                objectGrid.remove(obj);
                 continue;
             }
             if(obj instanceof Mobile) {
@@ -173,43 +512,99 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
                 Item itm = (Item) obj;
                 if(itm.shouldDecay()) {
                     registry.removeObject(itm.getSerial());
+                    objectGrid.remove(itm);
                     itm.delete();
                     continue;
                 }
+                decayQueue.update(itm);
             }
             obj.addObserver(this);
         }
         dayNightCycle.start();
         startDecayTimer();
+        startJournalTimers();
+        initMillis = System.currentTimeMillis() - startTime;
     }
 
     public synchronized void startDecayTimer() {
         Runnable decay = new Runnable() {
             public void run() {
-                log.fine("Running decay loop...");
-                for(SLObject obj : registry.allObjects()) {
-                    if(obj instanceof Item && ((Item) obj).shouldDecay()) {
-                        log.finer(obj.getName() + " decayed");
-                        obj.delete();
-                    }
-                }
-                TimerQueue.get().addTimer(new Timer(DECAY_MINUTES * 30 * 1000, this));
+                decayItems();
+                TimerQueue.get().addTimer(new Timer(DECAY_CHECK_MILLIS, this));
             }
         };
-        // run decay timer each decay_minutes / 2 minutes
-        TimerQueue.get().addTimer(new Timer(DECAY_MINUTES * 30 * 1000, decay));
+        TimerQueue.get().addTimer(new Timer(DECAY_CHECK_MILLIS, decay));
     }
 
-    public synchronized Collection<Player> getOnlinePlayersInRange(Point2D point, int range) {
-        List<Player> res = new LinkedList<Player>();
-        for(Player p : onlinePlayers) {
-            if(p.isOnline() && p.inRange(point, range)) {
-                res.add(p);
+    // deletes at most DECAY_BATCH_SIZE due items, the rest is deleted in the next checks
+    private synchronized void decayItems() {
+        long now = Timer.getCurrentTicks();
+        decayingItems.clear();
+        decayQueue.pollDue(now, DECAY_BATCH_SIZE, decayingItems);
+        for(Item item : decayingItems) {
+            if(item.isDeleted()) {
+                // e.g. was inside a container that decayed before it
+                continue;
+            }
+            if(item.shouldDecay()) {
+                log.finer(item.getName() + " decayed");
+                item.delete();
+            } else if(item.getDecayAt() > 0) {
+                // locked, check again later like the old decay sweep did
+                decayQueue.schedule(item, now + DECAY_MINUTES * 30 * 1000);
             }
         }
+        decayingItems.clear();
+    }
+
+    public synchronized int getPendingDecayCount() {
+        return decayQueue.size();
+    }
+
+    public synchronized int getKnownObjectCount() {
+        return interest.getKnownCount();
+    }
+
+    public synchronized Collection<Player> getOnlinePlayersInRange(Point2D point, int range) {
+        List<Player> res = new ArrayList<Player>();
+        playerGrid.forEachInRange(point, range, player -> {
+            if(player.isOnline()) {
+                res.add(player);
+            }
+        });
         return res;
     }
 
+    // same as getOnlinePlayersInRange, but doesn't create a collection
+    public synchronized void forEachOnlinePlayerInRange(Point2D point, int range, Consumer<? super Player> visitor) {
+        playerGrid.forEachInRange(point, range, player -> {
+            if(player.isOnline()) {
+                visitor.accept(player);
+            }
+        });
+    }
+
+    // The broadcast methods encode the packet once and give every recipient the same bytes
+    // instead of encoding it again for each client.
+    public synchronized void broadcastInRange(Point2D point, int range, SLPacket packet) {
+        EncodedPacket encoded = EncodedPacket.encode(packet);
+        forEachOnlinePlayerInRange(point, range, player -> player.sendPacket(encoded));
+    }
+
+    public synchronized void broadcastToInterested(SLObject obj, SLPacket packet) {
+        EncodedPacket encoded = EncodedPacket.encode(packet);
+        forEachInterestedPlayer(obj, player -> player.sendPacket(encoded));
+    }
+
+    public synchronized void broadcastToAll(SLPacket packet) {
+        EncodedPacket encoded = EncodedPacket.encode(packet);
+        for(Player player : onlinePlayers) {
+            if(player.isOnline()) {
+                player.sendPacket(encoded);
+            }
+        }
+    }
+
     public synchronized Collection<Player> getOnlinePlayers() {
         List<Player> res = new LinkedList<Player>();
         for(Player p : onlinePlayers) {
@@ -222,17 +617,27 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     // objects on ground
     public synchronized Collection<SLObject> getObjectsInRange(Point2D point, int range) {
-        List<SLObject> res = new LinkedList<SLObject>();
-        for(SLObject obj : registry.allObjects()) {
-            if(obj instanceof Item && !((Item) obj).isOnGround()) continue;
-
-            if(obj.isVisible() && obj.inRange(point, range)) {
+        List<SLObject> res = new ArrayList<SLObject>();
+        objectGrid.forEachInRange(point, range, obj -> {
+            if(obj.isVisible()) {
                 res.add(obj);
             }
-        }
+        });
         return res;
     }
 
+    // keeps the sector grid in sync with the object's placement: only mobiles
+    // and items on ground have a real location on the map
+    private synchronized void updateGrid(SLObject obj) {
+        if(obj.isDeleted() || obj.getLocation() == null) {
+            objectGrid.remove(obj);
+        } else if(obj instanceof Mobile || (obj instanceof Item && ((Item) obj).isOnGround())) {
+            objectGrid.update(obj, obj.getLocation());
+        } else {
+            objectGrid.remove(obj);
+        }
+    }
+
     public synchronized void sendInitSequence(Player player) {
         SLPacket init = new InitPlayerPacket(player, player.getSeed());
         player.sendPacket(init);
@@ -245,6 +650,8 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     public synchronized void loginPlayer(Player player) {
         onlinePlayers.add(player);
+        interest.addPlayer(player);
+        playerGrid.update(player, player.getLocation());
         log.info(player.getName() + " logged in, " + onlinePlayers.size() + " online");
 
         sendFullEquipment(player, player);
@@ -273,6 +680,8 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
         Group.leaveGroup(player);
         cancelDrag(player, player.getDraggedItem());
         onlinePlayers.remove(player);
+        playerGrid.remove(player);
+        interest.removePlayer(player);
         log.info(player.getName() + " logged out, " + onlinePlayers.size() + " online");
     }
 
@@ -314,13 +723,22 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     @Override
     public synchronized List<SLStatic> getStaticsAndDynamicsAtLocation(Point2D loc) {
-        List<SLStatic> res = new LinkedList<SLStatic>(SLData.get().getStatics().getStatics(loc));
-        for(SLObject obj : getObjectsInRange(loc, 0)) {
-            if(obj instanceof Item && loc.equals(obj.getLocation())) {
+        // fresh list from the packed statics, dynamics are appended after them
+        List<SLStatic> res = SLData.get().getStatics().getStatics(loc);
+        res.addAll(getDynamicsAtLocation(loc));
+        return res;
+    }
+
+    // move checks take the statics from the movement grid and only ask for the items
+    @Override
+    public synchronized List<SLStatic> getDynamicsAtLocation(Point2D loc) {
+        List<SLStatic> res = new ArrayList<SLStatic>(0);
+        objectGrid.forEachInRange(loc, 0, obj -> {
+            if(obj.isVisible() && obj instanceof Item && loc.equals(obj.getLocation())) {
                 SLStatic dynamic = new SLStatic(obj.getSerial(), obj.getGraphic(), obj.getLocation(), 0);
                 res.add(dynamic);
             }
-        }
+        });
         return res;
     }
 
@@ -436,8 +854,8 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     public synchronized void sendStats(Player player, Mobile what) {
         // if we're sending the status of someone else, send it in percent so you can't spy the actual values
         boolean relativeOnly = (player != what);
-        StatsUpdatePacket packet = new StatsUpdatePacket(what, relativeOnly);
-        player.sendPacket(packet);
+        statsPacket.setMobile(what, relativeOnly);
+        player.sendPacket(statsPacket);
     }
 
     public synchronized void onDoubleClickStatic(Player player, SLStatic stat) {
@@ -464,10 +882,14 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
         if(obj instanceof Item) {
             Item i = (Item) obj;
             if(i.isOnGround()) {
-                SendObjectPacket packet;
-                packet = new SendObjectPacket(i);
-                player.sendPacket(packet);
-            } else if(i.isWorn()) {
+                objectPacket.setObject(i);
+                player.sendPacket(objectPacket);
+                interest.markKnown(player, i);
+                return;
+            }
+            // not on the ground anymore, the client moves it
+            interest.forget(player, i);
+            if(i.isWorn()) {
                 Mobile wearer = (Mobile) i.getParent();
                 EquipPacket equip = new EquipPacket(wearer, i);
                 player.sendPacket(equip);
@@ -478,9 +900,9 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
             }
         } else if(obj instanceof Mobile) {
             Mobile m = (Mobile) obj;
-            SendObjectPacket packet;
-            packet = new SendObjectPacket(m);
-            player.sendPacket(packet);
+            objectPacket.setObject(m);
+            player.sendPacket(objectPacket);
+            interest.markKnown(player, m);
         } else {
             throw new RuntimeException("sendObject: don't know how to send " + obj);
         }
@@ -495,7 +917,9 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     }
 
     public synchronized void sendDelete(Player player, SLObject obj) {
-        player.sendPacket(new RemoveObjectPacket(obj));
+        removePacket.setSerial(obj.getSerial());
+        player.sendPacket(removePacket);
+        interest.forget(player, obj);
     }
 
     public synchronized void onDrag(Player player, Item item, int amount) {
@@ -674,7 +1098,7 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
         NPC helloNPC = null;
 
         // normal speech -> send to players and NPCs
-        SendTextPacket packet = new SendTextPacket(src, SendTextPacket.MODE_SAY, color, text);
+        SLPacket packet = EncodedPacket.encode(new SendTextPacket(src, SendTextPacket.MODE_SAY, color, text));
         for(SLObject obj : getObjectsInRange(src.getLocation(), SPEECH_RANGE)) {
             if(obj instanceof Player) {
                 ((Player) obj).sendPacket(packet);
@@ -697,52 +1121,52 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     // who can "see" an object?
     public synchronized Collection<Player> getInterestedPlayers(SLObject obj) {
-        List<Player> empty = new LinkedList<Player>();
+        List<Player> res = new ArrayList<Player>();
+        forEachInterestedPlayer(obj, res::add);
+        return res;
+    }
 
+    // same as getInterestedPlayers, but doesn't create a collection
+    public synchronized void forEachInterestedPlayer(SLObject obj, Consumer<? super Player> visitor) {
         if(registry.findObject(obj.getSerial()) == null) {
-            return empty;
+            return;
         }
 
         // a player is always interested in itself, even if invisible
         if(!obj.isVisible()) {
             if(obj instanceof Player && ((Player) obj).isOnline()) {
-                List<Player> res = new LinkedList<Player>();
-                res.add((Player) obj);
-                return res;
+                visitor.accept((Player) obj);
+                return;
             }
         }
 
         if(obj instanceof Mobile) {
-            return getOnlinePlayersInRange(obj.getLocation(), VISIBLE_RANGE);
+            forEachOnlinePlayerInRange(obj.getLocation(), VISIBLE_RANGE, visitor);
         } else if(obj instanceof Item) {
             Item itm = (Item) obj;
             if(itm.isOnGround()) {
-                return getOnlinePlayersInRange(obj.getLocation(), VISIBLE_RANGE);
+                forEachOnlinePlayerInRange(obj.getLocation(), VISIBLE_RANGE, visitor);
             } else if(itm.isWorn()) {
-                return getOnlinePlayersInRange(obj.getParent().getLocation(), VISIBLE_RANGE);
+                forEachOnlinePlayerInRange(obj.getParent().getLocation(), VISIBLE_RANGE, visitor);
             } else if(itm.isInContainer()) {
                 Item container = (Item) itm.getParent();
                 if(container.isOnGround()) {
-                    return getOnlinePlayersInRange(obj.getParent().getLocation(), VISIBLE_RANGE);
+                    forEachOnlinePlayerInRange(obj.getParent().getLocation(), VISIBLE_RANGE, visitor);
                 } else {
-                    List<Player> res = new LinkedList<Player>();
                     SLObject root = container.getRoot();
                     if(root instanceof Player) {
                         // inside a player's backpack -> only player is interested
-                        res.add((Player) root);
+                        visitor.accept((Player) root);
                     }
                     // need to add players that are peeking inside this container
-                    for(Player p : getOnlinePlayersInRange(root.getLocation(), 2)) {
+                    forEachOnlinePlayerInRange(root.getLocation(), 2, p -> {
                         if(container.isPlayerPeeking(p)) {
-                            res.add(p);
+                            visitor.accept(p);
                         }
-                    }
-                    return res;
+                    });
                 }
-            } else {
-                // no one can see it
-                return empty;
             }
+            // otherwise no one can see it
         } else {
             throw new RuntimeException("don't know who can see " + obj.getSerial());
         }
@@ -777,16 +1201,12 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     public synchronized void sayAbove(SLObject obj, String text) {
         SendTextPacket packet = new SendTextPacket(obj, SendTextPacket.MODE_SAY, SendTextPacket.COLOR_SEE_NPC, text);
-        for(Player p : getOnlinePlayersInRange(obj.getLocation(), World.VISIBLE_RANGE)) {
-            p.sendPacket(packet);
-        }
+        broadcastInRange(obj.getLocation(), World.VISIBLE_RANGE, packet);
     }
 
     public synchronized void sayAbove(Mobile mob, String text, long color) {
         SendTextPacket packet = new SendTextPacket(mob, SendTextPacket.MODE_SAY, color, text);
-        for(Player p : getOnlinePlayersInRange(mob.getLocation(), World.VISIBLE_RANGE)) {
-            p.sendPacket(packet);
-        }
+        broadcastInRange(mob.getLocation(), World.VISIBLE_RANGE, packet);
     }
 
     public synchronized void sendShop(Player player, Mobile shop) {
@@ -872,8 +1292,9 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
                     player.getBackpack().addChild(article, new Point2D(0, 0));
                     registry.registerObject(article);
                 } else {
+                    long firstSerial = registry.reserveItemSerials(item.getAmount());
                     for(int i = 0; i < item.getAmount(); i++) {
-                        Item article = item.createCopy(registry.registerItemSerial());
+                        Item article = item.createCopy(firstSerial + i);
                         article.setAmount(1);
                         player.getBackpack().addChild(article, new Point2D(0, 0));
                         registry.registerObject(article);
@@ -993,9 +1414,7 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
         if(attacker.hasFightAnimation()) {
             FightPacket packet = new FightPacket(false, attacker, defender);
-            for(Player p : getInterestedPlayers(attacker)) {
-                p.sendPacket(packet);
-            }
+            broadcastToInterested(attacker, packet);
         }
 
         if(attackSound != null)  {
@@ -1011,9 +1430,7 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     }
 
     public synchronized void playSound(int id, Point2D where) {
-        for(Player p : getOnlinePlayersInRange(where, VISIBLE_RANGE)) {
-            p.sendSound(id);
-        }
+        broadcastInRange(where, VISIBLE_RANGE, new SoundPacket(id));
     }
 
     public synchronized void npcPlayerSearch(NPC npc) {
@@ -1064,27 +1481,23 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     @Override
     public void onTimeChange(boolean phaseChanged) {
         log.fine("Ingame hour: " + dayNightCycle.getHour() + ", light level: " + dayNightCycle.getLightLevel());
-        GlobalLightLevelPacket packet = new GlobalLightLevelPacket(dayNightCycle.getLightLevel());
-        for(Player player : getOnlinePlayers()) {
-            player.sendPacket(packet);
-        }
+        broadcastToAll(new GlobalLightLevelPacket(dayNightCycle.getLightLevel()));
     }
 
     @Override
     public synchronized void onObjectUpdate(SLObject obj) {
+        journal.objectChanged(obj);
         // something basic like graphic or amount changed, but not location
-        for(Player player : getInterestedPlayers(obj)) {
+        SLPacket light = (obj instanceof Item && ((Item) obj).getLightLevel() != 0)
+                ? EncodedPacket.encode(new LightLevelPacket(obj, ((Item) obj).getLightLevel())) : null;
+        forEachInterestedPlayer(obj, player -> {
             log.finer(String.format("sending change of %08X to %s", obj.getSerial(), player.getName()));
             if(obj.isVisible() || obj == player) {
                 sendObject(player, obj);
                 if(obj instanceof Mobile) {
                     sendFullEquipment(player, (Mobile) obj);
-                } else if(obj instanceof Item) {
-                    Item itm = (Item) obj;
-                    if(itm.getLightLevel() != 0) {
-                        LightLevelPacket packet = new LightLevelPacket(itm, itm.getLightLevel());
-                        player.sendPacket(packet);
-                    }
+                } else if(light != null) {
+                    player.sendPacket(light);
                 }
             } else {
                 // probably invisible, but maybe just being dragged
@@ -1095,12 +1508,17 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
                     sendDelete(player, obj);
                 }
             }
-        }
+        });
     }
 
     @Override
     public synchronized void onLocationChanged(SLObject obj, Point3D oldLoc) {
         Point3D newLoc = obj.getLocation();
+        updateGrid(obj);
+        journal.placementChanged(obj);
+        if(obj instanceof Player && onlinePlayers.contains(obj)) {
+            playerGrid.update((Player) obj, newLoc);
+        }
 
         // special case: an item that's not on ground doesn't have a real location
         if(obj instanceof Item && !((Item) obj).isOnGround()) {
@@ -1111,11 +1529,15 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
                     sendDelete(player, obj);
                 }
             }
+            // players that saw it on the ground but can't see where it went
+            for(Player player : interest.getObservers(obj)) {
+                sendDelete(player, obj);
+            }
             return;
         }
 
         // send remove to players that no longer see it
-        for(Player player : getOnlinePlayersInRange(oldLoc, VISIBLE_RANGE)) {
+        for(Player player : interest.getObservers(obj)) {
             if(player.distanceTo(newLoc) > VISIBLE_RANGE && obj != player) {
                 log.finer(String.format("sending move of %08X to %s -> delete", obj.getSerial(), player.getName()));
                 sendDelete(player, obj);
@@ -1123,60 +1545,81 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
         }
 
         // send update to players that (still) see it now
-        for(Player player : getInterestedPlayers(obj)) {
+        forEachInterestedPlayer(obj, player -> {
             if(obj != player) {
                 log.finer(String.format("sending move of %08X to %s -> update", obj.getSerial(), player.getName()));
+                boolean entered = !interest.knows(player, obj);
                 sendObject(player, obj);
-                if(obj instanceof Mobile) {
-                    if(player.distanceTo(oldLoc) > VISIBLE_RANGE) {
-                        // wasn't visible before -> also send equip
-                        sendFullEquipment(player, (Mobile) obj);
-                    }
+                if(entered && obj instanceof Mobile) {
+                    // wasn't visible before -> also send equip
+                    sendFullEquipment(player, (Mobile) obj);
                 }
             }
-        }
+        });
 
-        // if a player was moved, delete all their old items and send new ones
+        // if a player was moved, delete the objects that left the scene and send the ones that entered
         if(obj instanceof Player) {
             Player movedPlayer = (Player) obj;
-            boolean wasForced = !movedPlayer.isWalking();
             if(movedPlayer.isOnline()) {
-                if(wasForced) {
-                    movedPlayer.sendLocation();
-                }
+                updatePlayerScene(movedPlayer, oldLoc, newLoc);
+            }
+        }
+    }
 
-                // delete no longer visible objects
-                for(SLObject oldObj : getObjectsInRange(oldLoc, VISIBLE_RANGE)) {
-                    if(oldObj.distanceTo(movedPlayer) > VISIBLE_RANGE && oldObj != movedPlayer) {
-                        log.finer(String.format("%s moved, %08X left scene", movedPlayer.getName(), oldObj.getSerial()));
-                        sendDelete(movedPlayer, oldObj);
-                    }
-                }
+    private void updatePlayerScene(Player movedPlayer, Point3D oldLoc, Point3D newLoc) {
+        boolean wasForced = !movedPlayer.isWalking();
+        if(wasForced) {
+            movedPlayer.sendLocation();
+        }
 
-                // send now visible objects
-                for(SLObject newObj : getObjectsInRange(newLoc, VISIBLE_RANGE)) {
-                    if(newObj == movedPlayer) {
-                        // player always sees itself anyways
-                        continue;
-                    }
+        // delete no longer visible objects
+        for(SLObject oldObj : interest.getKnownObjects(movedPlayer)) {
+            if(oldObj.distanceTo(movedPlayer) > VISIBLE_RANGE) {
+                log.finer(String.format("%s moved, %08X left scene", movedPlayer.getName(), oldObj.getSerial()));
+                sendDelete(movedPlayer, oldObj);
+            }
+        }
 
-                    // inform NPCs that are now in range
-                    if(newObj instanceof NPC && newObj.distanceTo(oldLoc) > SPEECH_RANGE && newObj.distanceTo(newLoc) <= SPEECH_RANGE) {
-                        ((NPC) newObj).onEnterArea(movedPlayer);
-                    }
+        // Everything that entered the range (or the NPCs' speech range) is closer to the new
+        // location than to the old one. For straight steps that's only one side of the area.
+        int minX = 0, maxX = SLMap.MAP_WIDTH - 1, minY = 0, maxY = SLMap.MAP_HEIGHT - 1;
+        if(!wasForced && oldLoc != null) {
+            int dx = newLoc.getX() - oldLoc.getX();
+            int dy = newLoc.getY() - oldLoc.getY();
+            if(dy == 0 && dx > 0) {
+                minX = (oldLoc.getX() + newLoc.getX()) / 2 + 1;
+            } else if(dy == 0 && dx < 0) {
+                maxX = (oldLoc.getX() + newLoc.getX() - 1) / 2;
+            } else if(dx == 0 && dy > 0) {
+                minY = (oldLoc.getY() + newLoc.getY()) / 2 + 1;
+            } else if(dx == 0 && dy < 0) {
+                maxY = (oldLoc.getY() + newLoc.getY() - 1) / 2;
+            }
+        }
 
-                    if(!wasForced && newObj.distanceTo(oldLoc) <= VISIBLE_RANGE) {
-                        // not really new because it was also visible before
-                        continue;
-                    }
+        List<SLObject> entered = new ArrayList<SLObject>();
+        objectGrid.forEachInArea(newLoc, VISIBLE_RANGE, minX, maxX, minY, maxY, newObj -> {
+            if(newObj != movedPlayer && newObj.isVisible()) {
+                entered.add(newObj);
+            }
+        });
 
-                    if(newObj.isVisible()) {
-                        log.finer(String.format("%s moved, %08X entered scene", movedPlayer.getName(), newObj.getSerial()));
-                        sendObject(movedPlayer, newObj);
-                        if(newObj instanceof Mobile) {
-                            sendFullEquipment(movedPlayer, (Mobile) newObj);
-                        }
-                    }
+        for(SLObject newObj : entered) {
+            // inform NPCs that are now in range
+            if(newObj instanceof NPC && (oldLoc == null || newObj.distanceTo(oldLoc) > SPEECH_RANGE) && newObj.distanceTo(newLoc) <= SPEECH_RANGE) {
+                ((NPC) newObj).onEnterArea(movedPlayer);
+            }
+
+            if(!wasForced && interest.knows(movedPlayer, newObj)) {
+                // not really new because it was also visible before
+                continue;
+            }
+
+            if(newObj.isVisible()) {
+                log.finer(String.format("%s moved, %08X entered scene", movedPlayer.getName(), newObj.getSerial()));
+                sendObject(movedPlayer, newObj);
+                if(newObj instanceof Mobile) {
+                    sendFullEquipment(movedPlayer, (Mobile) newObj);
                 }
             }
         }
@@ -1208,6 +1651,15 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
         obj.removeObserver(this);
         registry.removeObject(obj.getSerial());
+        journal.objectDeleted(obj);
+        interest.forgetObject(obj);
+        objectGrid.remove(obj);
+        if(obj instanceof Item) {
+            decayQueue.remove((Item) obj);
+        }
+        if(obj instanceof Player) {
+            playerGrid.remove((Player) obj);
+        }
     }
 
     @Override
@@ -1224,11 +1676,10 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     @Override
     public synchronized void onAttributeChanged(Mobile mob, Attribute a) {
+        journal.attributeChanged(mob, a);
         if(a == Attribute.HITS || a == Attribute.MAX_HITS) {
             // Someone's hit points changed -> tell everyone that can see them
-            for(Player player : getInterestedPlayers(mob)) {
-                sendStats(player, mob);
-            }
+            forEachInterestedPlayer(mob, player -> sendStats(player, mob));
         } else if(a.isSkill() && mob instanceof Player) {
             // Skill changed: Only send to self
             sendSkills((Player) mob, false);
@@ -1244,14 +1695,18 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     @Override
     public synchronized void onItemEquipped(Item item, Mobile mob) {
-        for(Player player : getOnlinePlayersInRange(mob.getLocation(), VISIBLE_RANGE)) {
+        updateGrid(item);
+        journal.placementChanged(item);
+        forEachOnlinePlayerInRange(mob.getLocation(), VISIBLE_RANGE, player -> {
             sendObject(player, item);
             player.sendLocation(); // fix redraw error
-        }
+        });
     }
 
     @Override
     public synchronized void onChildAdded(Item container, Item child) {
+        updateGrid(child);
+        journal.placementChanged(child);
         for(Player player : getInterestedPlayers(child)) {
             log.finer(String.format("item %08X in container %08X -> to %s", child.getSerial(), container.getSerial(), player.getName()));
             sendObject(player, child);
@@ -1260,6 +1715,7 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
 
     @Override
     public synchronized void onChildRemoved(Item container, Item child) {
+        journal.placementChanged(child);
         Player dragger = child.getDraggingPlayer();
         for(Player player : getInterestedPlayers(container)) {
             if(player != dragger) {
@@ -1342,8 +1798,27 @@ public class World implements ObjectObserver, SerialObserver, ObjectLister, Time
     }
 
     @Override
-    public void onObjectRegistered(SLObject object) {
+    public synchronized void onDecayChanged(Item item) {
+        decayQueue.update(item);
+        journal.objectChanged(item);
+    }
+
+    @Override
+    public synchronized void onNameChanged(SLObject obj, String oldName) {
+        journal.objectChanged(obj);
+        if(obj instanceof Player) {
+            registry.updatePlayerName((Player) obj, oldName);
+        }
+    }
+
+    @Override
+    public synchronized void onObjectRegistered(SLObject object) {
         object.addObserver(this);
+        updateGrid(object);
+        if(object instanceof Item) {
+            // decay could have been set up before we were observing it
+            decayQueue.update((Item) object);
+        }
         onObjectUpdate(object);
     }
 }
@@ -78,11 +78,12 @@ public class SLArt {
     }
 
 
-    private synchronized Integer getArtFileOffset(int artID) {
-        long idxOffset = artID * 12;
-        artIdx.seek((int) idxOffset);
-        long offset = artIdx.readUDWord();
-        long length = artIdx.readUDWord();
+    // the index is only read with absolute offsets and the art file through
+    // per-thread views, so art can be decoded by several threads at once
+    private Integer getArtFileOffset(int artID) {
+        int idxOffset = artID * 12;
+        long offset = artIdx.readUDWordAt(idxOffset);
+        long length = artIdx.readUDWordAt(idxOffset + 4);
 
         if(offset == -1 || length == -1) {
             return null;
@@ -90,14 +91,15 @@ public class SLArt {
         return (int) offset;
     }
 
-    public synchronized ArtEntry getLandArt(int landID) {
+    public ArtEntry getLandArt(int landID) {
         Integer offset = getArtFileOffset(landID);
         if(offset == null) {
             return null;
         }
+        SLDataFile artData = this.artData.forThread();
         artData.seek(offset);
         ArtEntry entry = new ArtEntry();
-        entry.unknown = artIdx.readUDWord();
+        entry.unknown = artIdx.readUDWordAt(landID * 12 + 8);
         entry.id = landID;
         entry.image = new BufferedImage(44, 44, BufferedImage.TYPE_INT_ARGB);
         for(int y = 0; y < 44; y++) {
@@ -120,14 +122,15 @@ public class SLArt {
         return entry;
     }
 
-    public synchronized ArtEntry getStaticArt(int staticID, boolean translucent) {
+    public ArtEntry getStaticArt(int staticID, boolean translucent) {
         Integer offset = getArtFileOffset(staticID + 0x4000);
         if(offset == null) {
             return null;
         }
+        SLDataFile artData = this.artData.forThread();
         artData.seek(offset);
         ArtEntry entry = new ArtEntry();
-        entry.unknown = artIdx.readUDWord();
+        entry.unknown = artIdx.readUDWordAt((staticID + 0x4000) * 12 + 8);
         entry.id = staticID;
 
         int alpha = 0xFF;
@@ -173,11 +176,12 @@ public class SLArt {
         return entry;
     }
 
-    public synchronized ItemAnimation getStaticAnimation(int staticID) {
+    public ItemAnimation getStaticAnimation(int staticID) {
         ItemAnimation res = new ItemAnimation();
         int block = staticID / 8;
         int entry = staticID % 8;
         int offset = block * (4 + 8 * 20) + 4 + entry * 20;
+        SLDataFile animData = this.animData.forThread();
         animData.seek(offset);
         res.frameOffsets = animData.readRaw(16);
         res.currentIndex = animData.readUByte();
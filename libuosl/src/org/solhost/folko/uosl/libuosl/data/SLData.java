@@ -27,6 +27,7 @@ import org.solhost.folko.uosl.libuosl.data.SLTiles.StaticTile;
 import org.solhost.folko.uosl.libuosl.types.Direction;
 import org.solhost.folko.uosl.libuosl.types.Point2D;
 import org.solhost.folko.uosl.libuosl.types.Point3D;
+import org.solhost.folko.uosl.libuosl.util.DynamicObjectLister;
 import org.solhost.folko.uosl.libuosl.util.ObjectLister;
 
 public class SLData {
@@ -41,6 +42,7 @@ public class SLData {
     private SLArt art;
     private SLGumps gumps;
     private SLTiles tiles;
+    private SLMovementGrid movementGrid;
 
     private SLData(String dataPath) {
         this.dataPath = dataPath;
@@ -74,6 +76,7 @@ public class SLData {
         art = new SLArt(dataPath +          "/ART.MUL", dataPath + "/ARTIDX.MUL", dataPath + "/ANIMDATA.MUL");
         tiles = new SLTiles(dataPath +      "/TILEDATA.MUL");
         gumps = new SLGumps(dataPath +      "/GUMPS.MUL");
+        movementGrid = new SLMovementGrid(map, statics, tiles);
     }
 
     // reverse engineered from the client, sub_4061A0
@@ -82,6 +85,12 @@ public class SLData {
     // become out of sync and NPCs could walk through statics or bad things like that
     private Point3D getElevatedPointReal(Point3D source, Direction dir, ObjectLister lister) {
         Point2D dest = source.getTranslated(dir);
+        if(lister instanceof DynamicObjectLister && movementGrid.covers(dest.getX(), dest.getY())) {
+            Point3D res = getElevatedPointGrid(source, dest, (DynamicObjectLister) lister);
+            if(res != NOT_IN_GRID) {
+                return res;
+            }
+        }
 
         int currentZ = source.getZ();
         int currZp9 = currentZ + 9;
@@ -167,26 +176,113 @@ public class SLData {
 
         // maybe todo: if lastStat.blocks: return false;
 
-        LandTile tile = tiles.getLandTile(map.getTextureID(dest));
+        LandTile tile = tiles.getLandTile(map.getTextureID(dest.getX(), dest.getY()));
         if(tile.isImpassable()) {
             return null;
         }
 
-        finalZ = map.getTileElevation(dest);
+        finalZ = map.getTileElevation(dest.getX(), dest.getY());
 
         int resX = dest.getX();
         int resY = dest.getY();
         int resZ = finalZ;
 
-        // blacklist because of map errors where players can escape the test area
-        if((resX == 432 && (resY == 724 || resY == 723 || resY == 722) && resZ == -15) ||
-            (resX == 334 && resY == 707)) {
+        if(isBlacklisted(resX, resY, resZ)) {
             return null;
         }
 
         return new Point3D(resX, resY, resZ);
     }
 
+    // blacklist because of map errors where players can escape the test area
+    private static boolean isBlacklisted(int x, int y, int z) {
+        return (x == 432 && (y == 724 || y == 723 || y == 722) && z == -15) || (x == 334 && y == 707);
+    }
+
+    private static final Point3D NOT_IN_GRID = new Point3D(0, 0, 0);
+
+    // Same as getElevatedPointReal, but the statics and the land come from the movement grid.
+    // Must stay in sync with it, the statics are visited first and the dynamics afterwards just like
+    // a DynamicObjectLister returns them. Returns NOT_IN_GRID if a dynamic has no tile data entry.
+    private Point3D getElevatedPointGrid(Point3D source, Point2D dest, DynamicObjectLister lister) {
+        int destX = dest.getX();
+        int destY = dest.getY();
+        int currentZ = source.getZ();
+        int currZp9 = currentZ + 9;
+        int finalZ = -128;
+        int edi = -128;
+        boolean staticsAllowWalking = false;
+
+        int end = movementGrid.getStaticsEnd(destX, destY);
+        List<SLStatic> dynamics = lister.getDynamicsAtLocation(dest);
+        int count = end + dynamics.size();
+        for(int i = movementGrid.getStaticsStart(destX, destY); i < count; i++) {
+            int staticID, ebx;
+            if(i < end) {
+                staticID = movementGrid.getStaticID(i);
+                ebx = movementGrid.getStaticZ(i);
+            } else {
+                SLStatic dynamic = dynamics.get(i - end);
+                staticID = dynamic.getStaticID();
+                ebx = dynamic.getLocation().getZ();
+            }
+            if(!SLMovementGrid.hasStaticInfo(staticID)) {
+                return NOT_IN_GRID;
+            }
+            if(ebx > currZp9) {
+                // starts above us -> ignore
+                continue;
+            }
+            int info = movementGrid.getStaticInfo(staticID);
+            int ecx = info & SLMovementGrid.HEIGHT_MASK;
+            int edx = ((ecx != 0) ? ecx : 1) + ebx;
+            if(edx > edi) {
+                if((info & SLMovementGrid.FLAG_STAIR) != 0 && currZp9 >= ebx + ecx) {
+                    edi = edx;
+                    staticsAllowWalking = true;
+                    finalZ = ebx + ecx;
+                    continue;
+                }
+                if((info & SLMovementGrid.FLAG_SURFACE) != 0 && currentZ >= ebx + ecx) {
+                    edi = edx;
+                    staticsAllowWalking = true;
+                    finalZ = ebx + ecx;
+                    continue;
+                }
+                if((info & SLMovementGrid.FLAG_IMPASSABLE) != 0) {
+                    staticsAllowWalking = false;
+                    edi = edx;
+                    continue;
+                }
+                if(currentZ + 1 >= edx || currZp9 + 3 < edx) {
+                    continue;
+                }
+                staticsAllowWalking = false;
+                edi = edx;
+            } else if(edx == edi && (info & SLMovementGrid.FLAG_IMPASSABLE) != 0) {
+                staticsAllowWalking = false;
+            }
+        }
+        if(edi > -128) {
+            // there are statics in our way
+            if(staticsAllowWalking) {
+                return new Point3D(dest, finalZ);
+            } else {
+                return null;
+            }
+        }
+
+        if(movementGrid.isLandBlocked(destX, destY)) {
+            return null;
+        }
+
+        int resZ = map.getTileElevation(destX, destY);
+        if(isBlacklisted(destX, destY, resZ)) {
+            return null;
+        }
+        return new Point3D(destX, destY, resZ);
+    }
+
     // when standing at "from" and moving in direction "dir", what's the effective 3D point?
     // returns null if impassable
     public Point3D getElevatedPoint(Point3D source, Direction dir, ObjectLister lister) {
@@ -261,6 +357,10 @@ public class SLData {
         return statics;
     }
 
+    public SLMovementGrid getMovementGrid() {
+        return movementGrid;
+    }
+
     // get all points on a direct path from src to dest
     public List<Point3D> getDirectPath(Point3D src, Point3D dest) {
         List<Point3D> path = new LinkedList<Point3D>();
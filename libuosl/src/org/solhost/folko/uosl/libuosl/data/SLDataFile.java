@@ -27,6 +27,7 @@ import java.nio.channels.FileChannel.MapMode;
 
 final class SLDataFile {
     private ByteBuffer mappedFile;
+    private final ThreadLocal<SLDataFile> threadViews;
 
     public SLDataFile(String path, boolean cacheFully) throws IOException {
         RandomAccessFile file = new RandomAccessFile(path, "r");
@@ -43,6 +44,24 @@ final class SLDataFile {
         }
         mappedFile.order(ByteOrder.LITTLE_ENDIAN);
         file.close();
+        threadViews = ThreadLocal.withInitial(() -> new SLDataFile(mappedFile.duplicate()));
+    }
+
+    // a view on the same data with its own position
+    private SLDataFile(ByteBuffer view) {
+        mappedFile = view;
+        threadViews = null;
+    }
+
+    // Returns a view of the file with a position that only the calling thread uses,
+    // so seek and the relative reads can be used without locking. The content is shared.
+    public SLDataFile forThread() {
+        if(threadViews == null) {
+            return this;
+        }
+        SLDataFile view = threadViews.get();
+        view.mappedFile.order(mappedFile.order());
+        return view;
     }
 
     public void setByteOrder(ByteOrder order) {
@@ -85,6 +104,24 @@ final class SLDataFile {
         return mappedFile.getInt() & 0xFFFFFFFF;
     }
 
+    // absolute reads don't touch the position, so they can be used concurrently
+    // as long as nobody changes the byte order at the same time
+    public byte readSByteAt(int offset) {
+        return mappedFile.get(offset);
+    }
+
+    public short readUByteAt(int offset) {
+        return (short) (mappedFile.get(offset) & 0xFF);
+    }
+
+    public int readUWordAt(int offset) {
+        return mappedFile.getShort(offset) & 0xFFFF;
+    }
+
+    public long readUDWordAt(int offset) {
+        return mappedFile.getInt(offset) & 0xFFFFFFFF;
+    }
+
     public boolean hasMore() {
         return mappedFile.remaining() > 0;
     }
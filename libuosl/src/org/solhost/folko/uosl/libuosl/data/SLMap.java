@@ -30,64 +30,71 @@ public class SLMap {
     private final SLDataFile mapFile;
 
     private boolean cached;
-    private MapTile[][] tiles;
-
-    private class MapTile {
-        int textureID;
-        byte elevation;
-    }
+    // x-major like the cells so that walking along y stays in the same area of the arrays
+    private short[] textureIDs;
+    private byte[] elevations;
 
     public SLMap(String map0Path) throws IOException {
-        mapFile = new SLDataFile(map0Path, true);
+        // mapped: pages are only loaded when a tile is accessed and the file isn't copied to the heap
+        mapFile = new SLDataFile(map0Path, false);
         cached = false;
     }
 
     public void buildCache() {
-        tiles = new MapTile[CELL_COUNT][TILES_PER_CELL];
+        short[] textures = new short[MAP_WIDTH * MAP_HEIGHT];
+        byte[] heights = new byte[MAP_WIDTH * MAP_HEIGHT];
         for(int cell = 0; cell < CELL_COUNT; cell++) {
-            for(int x = 0; x < 8; x++) {
-                for(int y = 0; y < 8; y++) {
-                    tiles[cell][Point2D.getTileIndex(x, y)] = readTile(Point2D.fromCell(cell, x, y));
-                }
+            int offset = cell * 196 + 4; // skip cell header
+            int cellX = cell / (MAP_WIDTH / 8) * 8;
+            int cellY = cell % (MAP_WIDTH / 8) * 8;
+            for(int tile = 0; tile < TILES_PER_CELL; tile++) {
+                int index = tileIndex(cellX + tile % 8, cellY + tile / 8);
+                textures[index] = (short) mapFile.readUWordAt(offset);
+                heights[index] = mapFile.readSByteAt(offset + 2);
+                offset += 3;
             }
         }
+        textureIDs = textures;
+        elevations = heights;
         cached = true;
     }
 
-    private MapTile readTile(Point2D pos) {
-        if(cached) {
-            return tiles[pos.getCellIndex()][pos.getTileIndex()];
-        }
-
-        synchronized(this) {
-            MapTile res = new MapTile();
-            int cell = pos.getCellIndex();
-            int tile = pos.getTileIndex();
-            int offset = cell * 196 + 4 + tile * 3;
-
-            mapFile.seek(offset);
-            res.textureID = mapFile.readUWord();
-            res.elevation = mapFile.readSByte();
+    private static int tileIndex(int x, int y) {
+        return x * MAP_HEIGHT + y;
+    }
 
-            return res;
-        }
+    // offset of the tile in MAP0.MUL: cells of 4 bytes header + 64 * (texture word, elevation byte)
+    private static int fileOffset(int x, int y) {
+        return Point2D.getCellIndex(x, y) * 196 + 4 + Point2D.getTileIndex(x, y) * 3;
     }
 
     // experimental
-    public synchronized long getColor(int cellID) {
-        int offset = cellID * 196;
-        mapFile.seek(offset);
-        return mapFile.readUDWord();
+    public long getColor(int cellID) {
+        return mapFile.readUDWordAt(cellID * 196);
     }
 
     // get the actual height as specified in the map file
+    public byte getTileElevation(int x, int y) {
+        if(cached) {
+            return elevations[tileIndex(x, y)];
+        }
+
+        return mapFile.readSByteAt(fileOffset(x, y) + 2);
+    }
+
     public byte getTileElevation(Point2D pos) {
-        MapTile tile = readTile(pos);
-        return tile.elevation;
+        return getTileElevation(pos.getX(), pos.getY());
+    }
+
+    public int getTextureID(int x, int y) {
+        if(cached) {
+            return textureIDs[tileIndex(x, y)] & 0xFFFF;
+        }
+
+        return mapFile.readUWordAt(fileOffset(x, y));
     }
 
     public int getTextureID(Point2D pos) {
-        MapTile tile = readTile(pos);
-        return tile.textureID;
+        return getTextureID(pos.getX(), pos.getY());
     }
 }
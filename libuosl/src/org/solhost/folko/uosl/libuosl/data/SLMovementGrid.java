@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.libuosl.data;
+
+import org.solhost.folko.uosl.libuosl.data.SLTiles.LandTile;
+import org.solhost.folko.uosl.libuosl.data.SLTiles.StaticTile;
+
+// what movement checks need to know about the map, precomputed from the map, the statics and
+// the tile data so that a check doesn't have to look up tile data entries or create objects.
+// Dynamic entries are still passed in by the caller.
+public class SLMovementGrid {
+    public static final int FLAG_STAIR      = 0x100;
+    public static final int FLAG_SURFACE    = 0x200;
+    public static final int FLAG_IMPASSABLE = 0x400;
+    public static final int HEIGHT_MASK     = 0xFF;
+
+    private static final byte LAND_BLOCKED = 1;
+    private static final byte LAND_UNKNOWN = 2; // texture without tile data entry, not handled by the grid
+
+    private final SLStatics statics;
+    private final byte[] landFlags;
+    private final short[] staticInfo;
+
+    public SLMovementGrid(SLMap map, SLStatics statics, SLTiles tiles) {
+        this.statics = statics;
+
+        staticInfo = new short[SLTiles.NUM_STATICS];
+        for(int id = 0; id < SLTiles.NUM_STATICS; id++) {
+            StaticTile tile = tiles.getStaticTile(id);
+            int info = tile.height & HEIGHT_MASK;
+            if(tile.isStair()) {
+                info |= FLAG_STAIR;
+            }
+            if(tile.isSurface()) {
+                info |= FLAG_SURFACE;
+            }
+            if(tile.isImpassable()) {
+                info |= FLAG_IMPASSABLE;
+            }
+            staticInfo[id] = (short) info;
+        }
+
+        boolean[] blockingTextures = new boolean[SLTiles.NUM_TEXTURES];
+        for(int id = 0; id < SLTiles.NUM_TEXTURES; id++) {
+            LandTile tile = tiles.getLandTile(id);
+            blockingTextures[id] = tile.isImpassable();
+        }
+
+        landFlags = new byte[SLMap.MAP_WIDTH * SLMap.MAP_HEIGHT];
+        for(int x = 0; x < SLMap.MAP_WIDTH; x++) {
+            for(int y = 0; y < SLMap.MAP_HEIGHT; y++) {
+                int textureID = map.getTextureID(x, y);
+                byte flags;
+                if(textureID >= SLTiles.NUM_TEXTURES) {
+                    flags = LAND_UNKNOWN;
+                } else if(blockingTextures[textureID]) {
+                    flags = LAND_BLOCKED;
+                } else {
+                    flags = 0;
+                }
+                landFlags[tileIndex(x, y)] = flags;
+            }
+        }
+    }
+
+    private static int tileIndex(int x, int y) {
+        return x * SLMap.MAP_HEIGHT + y;
+    }
+
+    // only tiles inside the map with known land can be checked using the grid
+    public boolean covers(int x, int y) {
+        if(x < 0 || x >= SLMap.MAP_WIDTH || y < 0 || y >= SLMap.MAP_HEIGHT) {
+            return false;
+        }
+        return landFlags[tileIndex(x, y)] != LAND_UNKNOWN;
+    }
+
+    public boolean isLandBlocked(int x, int y) {
+        return landFlags[tileIndex(x, y)] == LAND_BLOCKED;
+    }
+
+    public static boolean hasStaticInfo(int staticID) {
+        return staticID >= 0 && staticID < SLTiles.NUM_STATICS;
+    }
+
+    // height and flags of a static ID, see the FLAG_ constants
+    public int getStaticInfo(int staticID) {
+        return staticInfo[staticID];
+    }
+
+    // the statics of a tile are at [getStaticsStart, getStaticsEnd) and are accessed by index
+    public int getStaticsStart(int x, int y) {
+        return statics.tileStart[tileIndex(x, y)];
+    }
+
+    public int getStaticsEnd(int x, int y) {
+        return statics.tileStart[tileIndex(x, y) + 1];
+    }
+
+    public int getStaticID(int index) {
+        return statics.staticIDs[index] & 0xFFFF;
+    }
+
+    public int getStaticZ(int index) {
+        return statics.zs[index];
+    }
+}
@@ -27,12 +27,11 @@ public class SLPalette {
         palette = new SLDataFile(path, true);
     }
 
-    public synchronized  int getRGB(short index) {
+    public int getRGB(short index) {
         int offset = index * 3;
-        palette.seek(offset);
-        short r = palette.readUByte();
-        short g = palette.readUByte();
-        short b = palette.readUByte();
+        short r = palette.readUByteAt(offset);
+        short g = palette.readUByteAt(offset + 1);
+        short b = palette.readUByteAt(offset + 2);
         return (r << 16) | (g << 8) | b;
     }
 }
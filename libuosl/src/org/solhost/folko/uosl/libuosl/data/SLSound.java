@@ -39,20 +39,20 @@ public class SLSound {
         return soundIdx.getLength() / 12;
     }
 
-    public synchronized SoundEntry getEntry(int index) {
+    public SoundEntry getEntry(int index) {
         int idxOffset = index * 12;
-        soundIdx.seek(idxOffset);
 
         SoundEntry entry = new SoundEntry();
 
-        long offset = soundIdx.readUDWord();
-        long length = soundIdx.readUDWord();
+        long offset = soundIdx.readUDWordAt(idxOffset);
+        long length = soundIdx.readUDWordAt(idxOffset + 4);
         if(offset == -1 || length == -1) {
             return null;
         }
 
         entry.id = index;
-        entry.unknown = soundIdx.readUDWord();
+        entry.unknown = soundIdx.readUDWordAt(idxOffset + 8);
+        SLDataFile sound = this.sound.forThread();
         sound.seek((int) offset);
         entry.fileName = sound.readString(16);
         sound.skip(24);
@@ -23,7 +23,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.solhost.folko.uosl.libuosl.types.Point2D;
@@ -34,10 +34,134 @@ public class SLStatics {
     private List<SLStatic>[] staticCells;
     private boolean cached;
 
+    // packed store for per-tile lookups: the statics of tile t are at [tileStart[t], tileStart[t + 1])
+    // in file order, tiles are x-major like in SLMap. SLMovementGrid reads the arrays directly.
+    final int[] tileStart;
+    private final int[] serials;
+    final short[] staticIDs;
+    final byte[] zs;
+    private final short[] hues;
+
+    // flyweight over the statics of one tile, can be reused for other tiles with getTileStatics
+    public class TileStatics {
+        private int x, y, start, end;
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int size() {
+            return end - start;
+        }
+
+        public long getSerial(int index) {
+            return serials[start + index];
+        }
+
+        public int getStaticID(int index) {
+            return staticIDs[start + index] & 0xFFFF;
+        }
+
+        public byte getZ(int index) {
+            return zs[start + index];
+        }
+
+        public int getHue(int index) {
+            return hues[start + index] & 0xFFFF;
+        }
+
+        // allocates, only use when an object is really needed
+        public SLStatic get(int index) {
+            return new SLStatic(getSerial(index), getStaticID(index), new Point3D(x, y, getZ(index)), getHue(index));
+        }
+    }
+
     public SLStatics(String staticsPath, String staIdxPath) throws IOException {
-        staticsFile = new SLDataFile(staticsPath, true);
-        staticsIndex = new SLDataFile(staIdxPath, true);
+        // mapped and read with absolute offsets, so lookups don't need to lock
+        staticsFile = new SLDataFile(staticsPath, false);
+        staticsIndex = new SLDataFile(staIdxPath, false);
         cached = false;
+
+        // first pass counts the statics per tile, the second one sorts them in
+        tileStart = new int[SLMap.MAP_WIDTH * SLMap.MAP_HEIGHT + 1];
+        int total = 0;
+        for(int cell = 0; cell < SLMap.CELL_COUNT; cell++) {
+            int offset = getCellOffset(cell);
+            for(int i = 0; i < getCellCount(cell); i++, offset += 11) {
+                int tile = getPackedTile(cell, offset);
+                if(tile != -1) {
+                    tileStart[tile + 1]++;
+                    total++;
+                }
+            }
+        }
+        for(int tile = 0; tile < SLMap.MAP_WIDTH * SLMap.MAP_HEIGHT; tile++) {
+            tileStart[tile + 1] += tileStart[tile];
+        }
+
+        serials = new int[total];
+        staticIDs = new short[total];
+        zs = new byte[total];
+        hues = new short[total];
+        int[] fill = new int[SLMap.MAP_WIDTH * SLMap.MAP_HEIGHT];
+        for(int cell = 0; cell < SLMap.CELL_COUNT; cell++) {
+            int offset = getCellOffset(cell);
+            for(int i = 0; i < getCellCount(cell); i++, offset += 11) {
+                int tile = getPackedTile(cell, offset);
+                if(tile == -1) {
+                    continue;
+                }
+                int index = tileStart[tile] + fill[tile]++;
+                serials[index] = (int) staticsFile.readUDWordAt(offset);
+                staticIDs[index] = (short) staticsFile.readUWordAt(offset + 4);
+                zs[index] = staticsFile.readSByteAt(offset + 8);
+                hues[index] = (short) staticsFile.readUWordAt(offset + 9);
+            }
+        }
+    }
+
+    private int getCellOffset(int cell) {
+        return (int) staticsIndex.readUDWordAt(cell * 12);
+    }
+
+    private int getCellCount(int cell) {
+        if(staticsIndex.readUDWordAt(cell * 12) == -1) { // no statics
+            return 0;
+        }
+        return (int) staticsIndex.readUDWordAt(cell * 12 + 4) / 11;
+    }
+
+    // statics with offsets outside of their cell can't be found by location, so they aren't packed
+    private int getPackedTile(int cell, int offset) {
+        byte xOffset = staticsFile.readSByteAt(offset + 6);
+        byte yOffset = staticsFile.readSByteAt(offset + 7);
+        if(xOffset < 0 || xOffset >= 8 || yOffset < 0 || yOffset >= 8) {
+            return -1;
+        }
+        int x = cell / (SLMap.MAP_WIDTH / 8) * 8 + xOffset;
+        int y = cell % (SLMap.MAP_WIDTH / 8) * 8 + yOffset;
+        return x * SLMap.MAP_HEIGHT + y;
+    }
+
+    // Returns the statics on the given tile without allocating if a view is passed.
+    // The view is only valid until it is passed again.
+    public TileStatics getTileStatics(int x, int y, TileStatics reuse) {
+        TileStatics res = (reuse != null) ? reuse : new TileStatics();
+        res.x = x;
+        res.y = y;
+        if(x < 0 || x >= SLMap.MAP_WIDTH || y < 0 || y >= SLMap.MAP_HEIGHT) {
+            // Point2D allows the map border, there are no statics
+            res.start = res.end = 0;
+        } else {
+            int tile = x * SLMap.MAP_HEIGHT + y;
+            res.start = tileStart[tile];
+            res.end = tileStart[tile + 1];
+        }
+        return res;
     }
 
     @SuppressWarnings("unchecked")
@@ -54,39 +178,34 @@ public class SLStatics {
             return staticCells[cell];
         }
 
-        synchronized(this) {
-            int idxOffset = cell * 12;
-            staticsIndex.seek(idxOffset);
-            long staticsOffset = staticsIndex.readUDWord();
-            int staticsCount = (int) staticsIndex.readUDWord() / 11;
-            List<SLStatic> res = new ArrayList<SLStatic>(staticsCount);
-
-            if(staticsOffset == -1) { // no statics
-                return res;
-            }
+        int idxOffset = cell * 12;
+        long staticsOffset = staticsIndex.readUDWordAt(idxOffset);
+        int staticsCount = (int) staticsIndex.readUDWordAt(idxOffset + 4) / 11;
+        List<SLStatic> res = new ArrayList<SLStatic>(staticsCount);
 
-            staticsFile.seek((int) staticsOffset);
+        if(staticsOffset == -1) { // no statics
+            return res;
+        }
 
-            for(int i = 0; i < staticsCount; i++) {
-                long serial = staticsFile.readUDWord();
-                int staticID = staticsFile.readUWord();
-                byte xOffset = staticsFile.readSByte();
-                byte yOffset = staticsFile.readSByte();
-                byte z = staticsFile.readSByte();
-                int hue = staticsFile.readUWord();
+        int offset = (int) staticsOffset;
+        for(int i = 0; i < staticsCount; i++) {
+            long serial = staticsFile.readUDWordAt(offset);
+            int staticID = staticsFile.readUWordAt(offset + 4);
+            byte xOffset = staticsFile.readSByteAt(offset + 6);
+            byte yOffset = staticsFile.readSByteAt(offset + 7);
+            byte z = staticsFile.readSByteAt(offset + 8);
+            int hue = staticsFile.readUWordAt(offset + 9);
+            offset += 11;
 
-                Point3D location = new Point3D(Point2D.fromCell(cell, xOffset, yOffset), z);
-                SLStatic sta = new SLStatic(serial, staticID, location, hue);
-                res.add(sta);
-            }
-            return res;
+            Point3D location = new Point3D(Point2D.fromCell(cell, xOffset, yOffset), z);
+            SLStatic sta = new SLStatic(serial, staticID, location, hue);
+            res.add(sta);
         }
+        return res;
     }
 
     public Stream<SLStatic> getStaticsStream(Point2D pos) {
-        return getStatics(pos.getCellIndex())
-                    .stream()
-                    .filter((sta) -> sta.getLocation().equals2D(pos));
+        return getStatics(pos).stream();
     }
 
     public Stream<SLStatic> getStaticsStream(int cell) {
@@ -94,7 +213,21 @@ public class SLStatics {
     }
 
     public List<SLStatic> getStatics(Point2D pos) {
-        return getStaticsStream(pos).collect(Collectors.toCollection(ArrayList::new));
+        TileStatics tile = getTileStatics(pos.getX(), pos.getY(), null);
+        List<SLStatic> res = new ArrayList<SLStatic>(tile.size());
+        for(int i = 0; i < tile.size(); i++) {
+            res.add(tile.get(i));
+        }
+        return res;
+    }
+
+    // visits all statics without building a map of them
+    public void forEachStatic(Consumer<SLStatic> consumer) {
+        for(int cell = 0; cell < SLMap.CELL_COUNT; cell++) {
+            for(SLStatic stat : getStatics(cell)) {
+                consumer.accept(stat);
+            }
+        }
     }
 
     public Map<Long, SLStatic> getAllStatics() {
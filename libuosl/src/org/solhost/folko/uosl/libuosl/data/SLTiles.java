@@ -141,21 +141,20 @@ public class SLTiles {
             return landTiles[textureID];
         }
 
-        synchronized(this) {
-            LandTile res = new LandTile();
-            if(textureID < 0 || textureID > NUM_TEXTURES) {
-                throw new IllegalArgumentException("invalid texture ID: " + textureID);
-            }
-            int landGroupIndex = textureID / 32;
-            int landGroupOffset = textureID % 32;
-
-            int offset = landGroupIndex * 836 + 4 + landGroupOffset * 26;
-            tileDataFile.seek(offset);
-            res.flags = tileDataFile.readUDWord();
-            res.textureID = tileDataFile.readUWord();
-            res.name = tileDataFile.readString();
-            return res;
+        LandTile res = new LandTile();
+        if(textureID < 0 || textureID > NUM_TEXTURES) {
+            throw new IllegalArgumentException("invalid texture ID: " + textureID);
         }
+        int landGroupIndex = textureID / 32;
+        int landGroupOffset = textureID % 32;
+
+        int offset = landGroupIndex * 836 + 4 + landGroupOffset * 26;
+        SLDataFile tileDataFile = this.tileDataFile.forThread();
+        tileDataFile.seek(offset);
+        res.flags = tileDataFile.readUDWord();
+        res.textureID = tileDataFile.readUWord();
+        res.name = tileDataFile.readString();
+        return res;
     }
 
     public StaticTile getStaticTile(int staticID) {
@@ -163,29 +162,28 @@ public class SLTiles {
             return staticTiles[staticID];
         }
 
-        synchronized(this) {
-            StaticTile res = new StaticTile();
-            if(staticID < 0 || staticID > NUM_STATICS) {
-                throw new IllegalArgumentException("invalid static ID: " + staticID);
-            }
-            int staticGroupIndex = staticID / 32;
-            int staticGroupOffset = staticID % 32;
-            int offset = STATIC_START + staticGroupIndex * 1188 + 4 + staticGroupOffset * 37;
-            tileDataFile.seek(offset);
-            res.flags = tileDataFile.readUDWord();
-            res.weight = tileDataFile.readUByte();
-            res.layer = tileDataFile.readUByte();
-            res.unknown1 = tileDataFile.readUWord();
-            tileDataFile.readUByte(); // unused
-            tileDataFile.readUByte(); // unused
-            res.animationID = tileDataFile.readUWord();
-            res.unknown2 = tileDataFile.readUByte();
-            tileDataFile.readUByte(); // unused
-            res.price = tileDataFile.readUWord();
-            res.height = tileDataFile.readUByte();
-            res.name = tileDataFile.readString();
-            return res;
+        StaticTile res = new StaticTile();
+        if(staticID < 0 || staticID > NUM_STATICS) {
+            throw new IllegalArgumentException("invalid static ID: " + staticID);
         }
+        int staticGroupIndex = staticID / 32;
+        int staticGroupOffset = staticID % 32;
+        int offset = STATIC_START + staticGroupIndex * 1188 + 4 + staticGroupOffset * 37;
+        SLDataFile tileDataFile = this.tileDataFile.forThread();
+        tileDataFile.seek(offset);
+        res.flags = tileDataFile.readUDWord();
+        res.weight = tileDataFile.readUByte();
+        res.layer = tileDataFile.readUByte();
+        res.unknown1 = tileDataFile.readUWord();
+        tileDataFile.readUByte(); // unused
+        tileDataFile.readUByte(); // unused
+        res.animationID = tileDataFile.readUWord();
+        res.unknown2 = tileDataFile.readUByte();
+        tileDataFile.readUByte(); // unused
+        res.price = tileDataFile.readUWord();
+        res.height = tileDataFile.readUByte();
+        res.name = tileDataFile.readString();
+        return res;
     }
 
     public String getTextureName(int textureID) {
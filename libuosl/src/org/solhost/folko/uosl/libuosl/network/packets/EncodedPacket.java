@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.libuosl.network.packets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// a packet that was encoded once and can be written to any number of clients,
+// writing only copies the finished bytes. Immutable, so it can be shared freely.
+public class EncodedPacket extends SLPacket {
+    private static final int MAX_PACKET_LENGTH = 0xFFFF;
+    private static final ThreadLocal<ByteBuffer> scratch =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAX_PACKET_LENGTH));
+    private final short id;
+    private final byte[] data;
+
+    private EncodedPacket(short id, byte[] data) {
+        this.id = id;
+        this.data = data;
+    }
+
+    public static EncodedPacket encode(SLPacket packet) {
+        if(packet instanceof EncodedPacket) {
+            return (EncodedPacket) packet;
+        }
+        ByteBuffer buffer = scratch.get();
+        buffer.clear();
+        try {
+            packet.writeTo(buffer);
+        } catch(IOException e) {
+            throw new IllegalArgumentException("packet too large: " + packet.getClass().getSimpleName());
+        }
+        byte[] data = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(data);
+        return new EncodedPacket(packet.getID(), data);
+    }
+
+    @Override
+    public void writeTo(ByteBuffer dest) throws IOException {
+        if(dest.remaining() < data.length) {
+            throw new IOException("send buffer overflow");
+        }
+        dest.put(data);
+    }
+
+    public int getLength() {
+        return data.length;
+    }
+
+    @Override
+    public short getID() {
+        return id;
+    }
+}
@@ -31,7 +31,13 @@ public class EquipPacket extends SLPacket {
     private SendableItem item;
 
     public EquipPacket(SendableMobile mob, SendableItem item) {
-        initWrite(ID, 0x12);
+        this.mobile = mob;
+        this.item = item;
+    }
+
+    @Override
+    protected void encode() {
+        SendableMobile mob = mobile;
         addUDWord(item.getSerial());
         addUWord(item.getGraphic());
         addUByte((short) 0); // unknown
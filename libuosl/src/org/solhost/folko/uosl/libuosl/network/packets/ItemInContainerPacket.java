@@ -51,14 +51,19 @@ public class ItemInContainerPacket extends SLPacket {
     }
 
     public ItemInContainerPacket(SendableItem item, SendableItem container) {
-        initWrite(ID, 0x17);
+        this.item = item;
+        this.containerSerial = container.getSerial();
+    }
+
+    @Override
+    protected void encode() {
         addUDWord(item.getSerial());
         addUWord(item.getGraphic());
         addUByte((short) 0); // unknown
         addUWord(item.getAmount());
         addUWord(item.getLocation().getX());
         addUWord(item.getLocation().getY());
-        addUDWord(container.getSerial());
+        addUDWord(containerSerial);
         addUWord(item.getHue());
     }
 
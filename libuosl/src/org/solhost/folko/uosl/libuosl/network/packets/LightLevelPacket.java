@@ -23,9 +23,17 @@ import org.solhost.folko.uosl.libuosl.network.SendableObject;
 public class LightLevelPacket extends SLPacket {
     public static final short ID = 0xA8;
 
+    private final long serial;
+    private final byte level;
+
     public LightLevelPacket(SendableObject obj, byte level) {
-        initWrite(ID, 0x09);
-        addUDWord(obj.getSerial());
+        this.serial = obj.getSerial();
+        this.level = level;
+    }
+
+    @Override
+    protected void encode() {
+        addUDWord(serial);
         addSByte(level);
     }
 
@@ -30,7 +30,12 @@ public class LocationPacket extends SLPacket {
     private SendableMobile mobile;
 
     public LocationPacket(SendableMobile player) {
-        initWrite(ID, 0x13);
+        this.mobile = player;
+    }
+
+    @Override
+    protected void encode() {
+        SendableMobile player = mobile;
         addUDWord(player.getSerial());
         addUWord(player.getGraphic());
         addUByte((short) 0); // unused
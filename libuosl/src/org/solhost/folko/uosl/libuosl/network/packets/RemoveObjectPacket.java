@@ -26,12 +26,21 @@ public class RemoveObjectPacket extends SLPacket {
     public static final short ID = 0x3A;
     private long serial;
 
-    private RemoveObjectPacket() {
+    // flyweight, set the serial before writing
+    public RemoveObjectPacket() {
     }
 
     public RemoveObjectPacket(SendableObject obj) {
-        initWrite(ID, 0x08);
-        addUDWord(obj.getSerial());
+        this.serial = obj.getSerial();
+    }
+
+    public void setSerial(long serial) {
+        this.serial = serial;
+    }
+
+    @Override
+    protected void encode() {
+        addUDWord(serial);
     }
 
     public static RemoveObjectPacket read(ByteBuffer b, int len) {
@@ -19,12 +19,19 @@
 package org.solhost.folko.uosl.libuosl.network.packets;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+// Outgoing packets are written in one of two ways: older packets build their own
+// buffer in the constructor with initWrite, packets that override encode() only
+// keep their fields and write them straight into the destination in writeTo.
+// Those can be reused as flyweights by changing their fields between writes,
+// but an instance must not be written by several threads at once.
 public abstract class SLPacket {
     private static final short SL_PACKET_MAGIC = 0xFE;
-    private ByteBuffer sendBuffer;
+    private ByteBuffer sendBuffer; // the destination while encoding
 
     protected void initWrite(short id, int len) {
         sendBuffer = ByteBuffer.allocate(len);
@@ -36,6 +43,11 @@ public abstract class SLPacket {
 
     public abstract short getID();
 
+    // writes the payload with the add methods, the header is written by writeTo
+    protected void encode() {
+        throw new IllegalStateException("no content for packet " + getClass().getSimpleName());
+    }
+
     public void addSByte(byte b) {
         sendBuffer.put(b);
     }
@@ -99,61 +111,135 @@ public abstract class SLPacket {
         return b.getInt() & 0xFFFFFFFF;
     }
 
+    // fixed size field, the string ends at the first null byte
     public static String readString(ByteBuffer b, int len) {
-        StringBuilder res = new StringBuilder(len);
-        boolean gotNull = false;
-        for(int i = 0; i < len; i++) {
-            char chr = (char) b.get();
-            if(chr != '\0' && !gotNull) {
-                res.append(chr);
-            } else {
-                gotNull = true;
-            }
+        if(b.remaining() < len) {
+            throw new BufferUnderflowException();
+        }
+        int start = b.position();
+        int strLen = 0;
+        while(strLen < len && b.get(start + strLen) != 0) {
+            strLen++;
         }
-        return res.toString();
+        String res = toString(b, start, strLen);
+        b.position(start + len);
+        return res;
     }
 
     public static String readString(ByteBuffer b) {
-        StringBuilder res = new StringBuilder();
-        char chr;
-        do {
-            chr = (char) b.get();
-            if(chr != '\0') {
-                res.append(chr);
+        int start = b.position();
+        int limit = b.limit();
+        int strLen = 0;
+        while(true) {
+            if(start + strLen >= limit) {
+                // no terminating null byte in the packet
+                throw new BufferUnderflowException();
+            }
+            if(b.get(start + strLen) == 0) {
+                break;
             }
-        } while(chr != '\0');
-        return res.toString();
+            strLen++;
+        }
+        String res = toString(b, start, strLen);
+        b.position(start + strLen + 1);
+        return res;
+    }
+
+    // bytes are sign extended into chars like it was always done, addString only keeps the low byte
+    private static String toString(ByteBuffer b, int start, int len) {
+        char[] chars = new char[len];
+        for(int i = 0; i < len; i++) {
+            chars[i] = (char) b.get(start + i);
+        }
+        return new String(chars);
     }
 
     // write packet to buffer
     public void writeTo(ByteBuffer dest) throws IOException {
+        if(sendBuffer == null) {
+            encodeTo(dest);
+            return;
+        }
         sendBuffer.flip();
+        if(dest.remaining() < sendBuffer.remaining()) {
+            sendBuffer.position(0);
+            throw new IOException("send buffer overflow");
+        }
         dest.put(sendBuffer);
-        if(sendBuffer.remaining() > 0) {
+    }
+
+    // writes header and payload into dest and patches the length afterwards,
+    // dest is left unchanged if the packet doesn't fit
+    private void encodeTo(ByteBuffer dest) throws IOException {
+        int start = dest.position();
+        ByteOrder order = dest.order();
+        dest.order(ByteOrder.BIG_ENDIAN);
+        sendBuffer = dest;
+        try {
+            addUByte(SL_PACKET_MAGIC);
+            addUByte(getID());
+            addUWord(0);
+            encode();
+            dest.putShort(start + 2, (short) (dest.position() - start));
+        } catch(BufferOverflowException e) {
+            dest.position(start);
             throw new IOException("send buffer overflow");
+        } finally {
+            sendBuffer = null;
+            dest.order(order);
         }
     }
 
-    public static SLPacket readPacket(ByteBuffer buffer) throws IOException {
-        int gotBytes = buffer.remaining();
-        if(gotBytes < 4) {
+    // Returns the length of the complete packet at the buffer's position without consuming
+    // anything, -1 if more data is needed. Lets callers frame packets before decoding them.
+    public static int frameLength(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if(buffer.remaining() < 4) {
             // not enough bytes to read packet header
-            return null;
+            return -1;
         }
 
-        short magic = readUByte(buffer);
+        short magic = (short) (buffer.get(start) & 0xFF);
         if(magic != SL_PACKET_MAGIC) {
             // not an UOSL packet or packet error -> need to kick client
             throw new IOException("invalid packet magic: " + magic);
         }
-        short id = readUByte(buffer);
-        int length = readUWord(buffer);
-        if(length > gotBytes) {
+        int length = buffer.getShort(start + 2) & 0xFFFF;
+        if(length < 4) {
+            throw new IOException("invalid packet length: " + length);
+        }
+        if(length > buffer.remaining()) {
             // not enough bytes to read entire packet
+            return -1;
+        }
+        return length;
+    }
+
+    // Decodes the packet at the buffer's position and moves behind it, returns null if the
+    // packet isn't complete yet. Decoders only see the packet's own bytes, so a decoder
+    // that reads too few bytes doesn't break the following packets.
+    public static SLPacket readPacket(ByteBuffer buffer) throws IOException {
+        int length = frameLength(buffer);
+        if(length < 0) {
             return null;
         }
-        int dataLength = length - 4;
+        int start = buffer.position();
+        int limit = buffer.limit();
+        short id = (short) (buffer.get(start + 1) & 0xFF);
+        buffer.position(start + 4);
+        buffer.limit(start + length);
+        try {
+            return decode(buffer, id, length - 4);
+        } catch(BufferUnderflowException | IndexOutOfBoundsException e) {
+            // a malformed packet must only cost its own connection
+            throw new IOException(String.format("packet %02X too short: %d bytes", id, length));
+        } finally {
+            buffer.limit(limit);
+            buffer.position(start + length);
+        }
+    }
 
+    private static SLPacket decode(ByteBuffer buffer, short id, int dataLength) {
         switch(id) {
         case LoginPacket.ID:            return LoginPacket.read(buffer, dataLength);
         case LoginErrorPacket.ID:       return LoginErrorPacket.read(buffer, dataLength);
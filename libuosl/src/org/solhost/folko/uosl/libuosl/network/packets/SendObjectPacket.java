@@ -34,7 +34,20 @@ public class SendObjectPacket extends SLPacket {
     private Direction facing;
 
     public SendObjectPacket(SendableObject obj) {
-        initWrite(ID, 0x15);
+        this.object = obj;
+    }
+
+    // flyweight, set the object before writing
+    public SendObjectPacket() {
+    }
+
+    public void setObject(SendableObject obj) {
+        this.object = obj;
+    }
+
+    @Override
+    protected void encode() {
+        SendableObject obj = object;
         addUDWord(obj.getSerial());
         addUWord(obj.getGraphic());
         addUByte((short) 0); // unknown, seems to be added to graphic
@@ -56,9 +69,6 @@ public class SendObjectPacket extends SLPacket {
         addUWord(obj.getHue());
     }
 
-    private SendObjectPacket() {
-    }
-
     public static SendObjectPacket read(ByteBuffer buffer, int length) {
         SendObjectPacket res = new SendObjectPacket();
         ObjectStub object = new ObjectStub();
@@ -39,7 +39,15 @@ public class SendTextPacket extends SLPacket {
 
     // src can be null when MODE_SYSMSG
     public SendTextPacket(SendableObject src, short mode, long color, String text) {
-        initWrite(ID, 46 + text.length());
+        this.source = src;
+        this.mode = mode;
+        this.color = color;
+        this.text = text;
+    }
+
+    @Override
+    protected void encode() {
+        SendableObject src = source;
         if(src instanceof SendableObject) {
             addUDWord(src.getSerial());
         } else {
@@ -27,10 +27,24 @@ import org.solhost.folko.uosl.libuosl.types.Attribute;
 public class StatsUpdatePacket extends SLPacket {
     public static final short ID = 0x4C;
     private SendableMobile mobile;
+    private boolean relativeHitsOnly;
 
     public StatsUpdatePacket(SendableMobile mob, boolean relativeHitsOnly) {
-        initWrite(ID, 0x14);
+        setMobile(mob, relativeHitsOnly);
+    }
+
+    // flyweight, set the mobile before writing
+    public StatsUpdatePacket() {
+    }
+
+    public void setMobile(SendableMobile mob, boolean relativeHitsOnly) {
+        this.mobile = mob;
+        this.relativeHitsOnly = relativeHitsOnly;
+    }
 
+    @Override
+    protected void encode() {
+        SendableMobile mob = mobile;
         addUDWord(mob.getSerial());
 
         int hits = (int) mob.getAttribute(Attribute.HITS),
@@ -56,9 +70,6 @@ public class StatsUpdatePacket extends SLPacket {
         }
     }
 
-    private StatsUpdatePacket() {
-    }
-
     public static StatsUpdatePacket read(ByteBuffer buffer, int lenght) {
         StatsUpdatePacket res = new StatsUpdatePacket();
         MobileStub m = new MobileStub();
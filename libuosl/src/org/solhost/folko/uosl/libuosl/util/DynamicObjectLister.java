@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.libuosl.util;
+
+import java.util.List;
+
+import org.solhost.folko.uosl.libuosl.data.SLStatic;
+import org.solhost.folko.uosl.libuosl.types.Point2D;
+
+// an object lister whose entries are always the statics from the data files followed by
+// the dynamic entries, so move checks can take the statics from the movement grid
+public interface DynamicObjectLister extends ObjectLister {
+    // return only the dynamic entries, e.g. items, in the same order as getStaticsAndDynamicsAtLocation
+    public List<SLStatic> getDynamicsAtLocation(Point2D loc);
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.libuosl.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.solhost.folko.uosl.libuosl.types.Direction;
+import org.solhost.folko.uosl.libuosl.types.Point2D;
+import org.solhost.folko.uosl.libuosl.types.Point3D;
+import org.solhost.folko.uosl.libuosl.util.DynamicObjectLister;
+import org.solhost.folko.uosl.libuosl.util.ObjectLister;
+
+// Sweeps the whole map and checks that move checks using the movement grid give exactly the
+// same results as the reverse engineered sub_4061A0 code. Uses the data files in the directory
+// given by -Duosl.data if set, otherwise generated data files with random statics and items.
+public class SLMovementGridTest {
+    private final Map<Point2D, List<SLStatic>> dynamics = new HashMap<Point2D, List<SLStatic>>();
+
+    @Test
+    public void gridMatchesReferenceOnWholeMap() throws IOException {
+        String dataPath = System.getProperty("uosl.data");
+        if(dataPath == null) {
+            dataPath = generateData().getPath();
+        }
+        SLData data = SLData.init(dataPath);
+        SLStatics statics = data.getStatics();
+
+        Random random = new Random(5);
+        for(int i = 0; i < 200000; i++) {
+            Point2D loc = new Point2D(random.nextInt(SLMap.MAP_WIDTH), random.nextInt(SLMap.MAP_HEIGHT));
+            // some items have graphics without tile data entry to cover the fallback
+            int graphic = (random.nextInt(1000) == 0) ? 0x5000 : random.nextInt(SLTiles.NUM_STATICS);
+            SLStatic item = new SLStatic(i, graphic, new Point3D(loc, random.nextInt(60) - 20), 0);
+            dynamics.computeIfAbsent(loc, l -> new ArrayList<SLStatic>()).add(item);
+        }
+
+        // the reference only gets the combined list, the grid lister additionally lists the dynamics
+        ObjectLister reference = loc -> {
+            List<SLStatic> res = statics.getStatics(loc);
+            res.addAll(getDynamics(loc));
+            return res;
+        };
+        DynamicObjectLister grid = new DynamicObjectLister() {
+            @Override
+            public List<SLStatic> getStaticsAndDynamicsAtLocation(Point2D loc) {
+                return reference.getStaticsAndDynamicsAtLocation(loc);
+            }
+
+            @Override
+            public List<SLStatic> getDynamicsAtLocation(Point2D loc) {
+                return getDynamics(loc);
+            }
+        };
+
+        for(int x = 1; x < SLMap.MAP_WIDTH - 1; x++) {
+            for(int y = 1; y < SLMap.MAP_HEIGHT - 1; y++) {
+                Point3D source = new Point3D(x, y, random.nextInt(60) - 20);
+                for(Direction dir : Direction.values()) {
+                    String expected = check(data, source, dir, reference);
+                    assertEquals(source + " " + dir, expected, check(data, source, dir, grid));
+                }
+            }
+        }
+    }
+
+    private List<SLStatic> getDynamics(Point2D loc) {
+        List<SLStatic> res = dynamics.get(new Point2D(loc.getX(), loc.getY()));
+        return (res == null) ? Collections.<SLStatic>emptyList() : new ArrayList<SLStatic>(res);
+    }
+
+    // exceptions are results too, both paths have to fail in the same way
+    private static String check(SLData data, Point3D source, Direction dir, ObjectLister lister) {
+        try {
+            Point3D res = data.getElevatedPoint(source, dir, lister);
+            return (res == null) ? "blocked" : res.getX() + "," + res.getY() + "," + res.getZ();
+        } catch(RuntimeException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static File generateData() throws IOException {
+        Random random = new Random(7);
+        File dir = File.createTempFile("uosl", "data");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+
+        // map: cell header + 64 * (texture, elevation), a few textures without tile data
+        ByteBuffer map = buffer(SLMap.CELL_COUNT * 196);
+        for(int cell = 0; cell < SLMap.CELL_COUNT; cell++) {
+            map.putInt(0);
+            for(int tile = 0; tile < SLMap.TILES_PER_CELL; tile++) {
+                boolean unknown = random.nextInt(1000) == 0;
+                map.putShort((short) (unknown ? 0x5000 : random.nextInt(SLTiles.NUM_TEXTURES)));
+                map.put((byte) (random.nextInt(50) - 20));
+            }
+        }
+        write(dir, "MAP0.MUL", map);
+
+        // statics: 0 to 5 per tile, stored in random order within the cell
+        ByteBuffer index = buffer(SLMap.CELL_COUNT * 12);
+        ByteBuffer statics = buffer(SLMap.CELL_COUNT * SLMap.TILES_PER_CELL * 5 * 11);
+        int[] counts = {0, 0, 1, 1, 2, 3, 5};
+        for(int cell = 0; cell < SLMap.CELL_COUNT; cell++) {
+            List<byte[]> entries = new ArrayList<byte[]>();
+            for(int tile = 0; tile < SLMap.TILES_PER_CELL; tile++) {
+                for(int i = counts[random.nextInt(counts.length)]; i > 0; i--) {
+                    ByteBuffer entry = buffer(11);
+                    entry.putInt(random.nextInt());
+                    entry.putShort((short) random.nextInt(SLTiles.NUM_STATICS));
+                    entry.put((byte) (tile % 8));
+                    entry.put((byte) (tile / 8));
+                    entry.put((byte) (random.nextInt(60) - 20));
+                    entry.putShort((short) 0);
+                    entries.add(entry.array());
+                }
+            }
+            Collections.shuffle(entries, random);
+            if(entries.isEmpty()) {
+                index.putInt(-1).putInt(0).putInt(0);
+                continue;
+            }
+            index.putInt(statics.position()).putInt(entries.size() * 11).putInt(0);
+            for(byte[] entry : entries) {
+                statics.put(entry);
+            }
+        }
+        write(dir, "STAIDX0.MUL", index);
+        statics.flip();
+        ByteBuffer usedStatics = buffer(statics.remaining());
+        usedStatics.put(statics);
+        write(dir, "STATICS0.MUL", usedStatics);
+
+        // tile data: random flags, names are empty
+        int[] heights = {0, 0, 1, 2, 5, 10, 20};
+        ByteBuffer tileData = buffer(428032 + SLTiles.NUM_STATICS / 32 * 1188);
+        for(int group = 0; group < SLTiles.NUM_TEXTURES / 32; group++) {
+            tileData.putInt(0);
+            for(int i = 0; i < 32; i++) {
+                tileData.putInt(random.nextInt());
+                tileData.putShort((short) 0);
+                tileData.put(new byte[20]);
+            }
+        }
+        for(int group = 0; group < SLTiles.NUM_STATICS / 32; group++) {
+            tileData.putInt(0);
+            for(int i = 0; i < 32; i++) {
+                tileData.putInt(random.nextInt());
+                tileData.put(new byte[12]);
+                tileData.put((byte) heights[random.nextInt(heights.length)]);
+                tileData.put(new byte[20]);
+            }
+        }
+        write(dir, "TILEDATA.MUL", tileData);
+
+        // one "no data" byte per gump, the other files aren't used here
+        write(dir, "GUMPS.MUL", buffer(SLGumps.GUMP_ENTRY_COUNT));
+        for(String name : new String[] {"PALETTE.MUL", "SOUND.MUL", "SOUNDIDX.MUL", "ART.MUL", "ARTIDX.MUL", "ANIMDATA.MUL"}) {
+            write(dir, name, buffer(0));
+        }
+        return dir;
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void write(File dir, String name, ByteBuffer content) throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        try(FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.array());
+        }
+    }
+}
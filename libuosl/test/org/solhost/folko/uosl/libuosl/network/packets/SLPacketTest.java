@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2013 Folke Will <folke.will@gmail.com>
+ *
+ * This file is part of JPhex.
+ *
+ * JPhex is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * JPhex is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package org.solhost.folko.uosl.libuosl.network.packets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class SLPacketTest {
+    // header: magic, id, length word
+    private static ByteBuffer packet(int id, byte[] data, int trailing) {
+        ByteBuffer res = ByteBuffer.allocate(4 + data.length + trailing);
+        res.put((byte) 0xFE);
+        res.put((byte) id);
+        res.putShort((short) (4 + data.length));
+        res.put(data);
+        res.flip();
+        return res;
+    }
+
+    private static void assertRejected(ByteBuffer buffer, int expectedEnd) {
+        try {
+            SLPacket.readPacket(buffer);
+            fail("truncated packet was decoded");
+        } catch(IOException e) {
+            // the rest of the stream stays framed
+            assertEquals(expectedEnd, buffer.position());
+        }
+    }
+
+    @Test
+    public void truncatedSendTextIsRejected() {
+        // serial, unknown word, mode, color, name[30] and no text at all
+        assertRejected(packet(SendTextPacket.ID, new byte[4 + 2 + 1 + 4 + 30], 0), 4 + 41);
+    }
+
+    @Test
+    public void unterminatedSendTextIsRejected() {
+        byte[] data = new byte[41 + 3];
+        data[41] = 'a';
+        data[42] = 'b';
+        data[43] = 'c';
+        // bytes after the packet must not be read as part of the text
+        assertRejected(packet(SendTextPacket.ID, data, 8), 4 + 44);
+    }
+
+    @Test
+    public void truncatedBoardAddPostIsRejected() {
+        assertRejected(packet(BoardAddPostPacket.ID, new byte[80], 0), 4 + 80);
+        assertRejected(packet(BoardAddPostPacket.ID, new byte[10], 0), 4 + 10);
+    }
+
+    @Test
+    public void completeBoardAddPostIsDecoded() throws IOException {
+        byte[] data = new byte[80 + 3];
+        data[0] = 's';
+        data[80] = 'h';
+        data[81] = 'i';
+        BoardAddPostPacket res = (BoardAddPostPacket) SLPacket.readPacket(packet(BoardAddPostPacket.ID, data, 0));
+        assertEquals("s", res.getSubject());
+        assertEquals("hi", res.getMessage());
+    }
+
+    @Test
+    public void incompletePacketWaitsForMoreData() throws IOException {
+        ByteBuffer buffer = packet(BoardAddPostPacket.ID, new byte[83], 0);
+        buffer.limit(50);
+        assertNull(SLPacket.readPacket(buffer));
+        assertEquals(0, buffer.position());
+    }
+}
@@ -3,6 +3,7 @@ package org.solhost.folko.uosl.slclient.models;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import org.lwjgl.opengl.GL11;
 import org.solhost.folko.uosl.libuosl.data.SLArt;
@@ -10,7 +11,6 @@ import org.solhost.folko.uosl.libuosl.data.SLData;
 import org.solhost.folko.uosl.libuosl.data.SLArt.ArtEntry;
 import org.solhost.folko.uosl.libuosl.data.SLMap;
 import org.solhost.folko.uosl.libuosl.data.SLTiles.StaticTile;
-import org.solhost.folko.uosl.libuosl.types.Point2D;
 import org.solhost.folko.uosl.slclient.views.util.Texture;
 
 public class TexturePool {
@@ -32,7 +32,7 @@ public class TexturePool {
         // but otherweise only put tiles into the atlas that are actually in use by the map
         for(int x = 0; x < SLMap.MAP_WIDTH; x++) {
             for(int y = 0; y < SLMap.MAP_HEIGHT; y++) {
-                int tileId = map.getTextureID(new Point2D(x, y));
+                int tileId = map.getTextureID(x, y);
                 if(landAtlas.hasEntry(tileId)) {
                     continue;
                 }
@@ -48,13 +48,19 @@ public class TexturePool {
     private static void createStaticAtlas() {
         SLArt art = SLData.get().getArt();
 
-        for(int i = 0; i < SLArt.NUM_STATIC_ARTS; i++) {
+        // decoding can run in parallel, the atlas is filled in order afterwards
+        ArtEntry[] entries = new ArtEntry[SLArt.NUM_STATIC_ARTS];
+        IntStream.range(0, SLArt.NUM_STATIC_ARTS).parallel().forEach(i -> {
             StaticTile tile = SLData.get().getTiles().getStaticTile(i);
             if(tile == null) {
-                continue;
+                return;
             }
             boolean translucent = (tile.flags & StaticTile.FLAG_TRANSLUCENT) != 0;
-            ArtEntry entry = art.getStaticArt(i, translucent);
+            entries[i] = art.getStaticArt(i, translucent);
+        });
+
+        for(int i = 0; i < SLArt.NUM_STATIC_ARTS; i++) {
+            ArtEntry entry = entries[i];
             if(entry != null && entry.image != null) {
                 staticAtlas.addImage(entry.image, i);
             }
@@ -78,10 +84,13 @@ public class TexturePool {
         createLandAtlas();
         createStaticAtlas();
 
-        for(int i = 0x4000; i < 0x4000 + SLArt.NUM_ANIMATION_ARTS; i++) {
-            ArtEntry entry = art.getStaticArt(i, false);
+        ArtEntry[] frames = new ArtEntry[SLArt.NUM_ANIMATION_ARTS];
+        IntStream.range(0, SLArt.NUM_ANIMATION_ARTS).parallel().forEach(i -> frames[i] = art.getStaticArt(i + 0x4000, false));
+        for(int i = 0; i < SLArt.NUM_ANIMATION_ARTS; i++) {
+            ArtEntry entry = frames[i];
             if(entry != null && entry.image != null) {
-                animationFrames[i - 0x4000] = new Texture(entry.image);
+                // textures have to be created on the GL thread
+                animationFrames[i] = new Texture(entry.image);
             }
         }
 
@@ -17,7 +17,6 @@ import org.lwjgl.BufferUtils;
 import org.solhost.folko.uosl.libuosl.data.SLData;
 import org.solhost.folko.uosl.libuosl.data.SLMap;
 import org.solhost.folko.uosl.libuosl.data.SLTiles.LandTile;
-import org.solhost.folko.uosl.libuosl.types.Point2D;
 import org.solhost.folko.uosl.libuosl.types.Point3D;
 import org.solhost.folko.uosl.slclient.models.TextureAtlas;
 import org.solhost.folko.uosl.slclient.models.TexturePool;
@@ -101,7 +100,7 @@ public class LandRenderer {
                 } else {
                     boolean shouldProject = false, canProject = false;
                     point = new Point3D(x, y, getZ(x, y));
-                    int landID = SLData.get().getMap().getTextureID(point);
+                    int landID = SLData.get().getMap().getTextureID(x, y);
                     LandTile landTile = SLData.get().getTiles().getLandTile(landID);
                     selfZ = point.getZ();
                     eastZ = getZ(x + 1, y);
@@ -165,7 +164,7 @@ public class LandRenderer {
     }
 
     private int getZ(int x, int y) {
-        return SLData.get().getMap().getTileElevation(new Point2D(x, y));
+        return SLData.get().getMap().getTileElevation(x, y);
     }
 
     public void render(Transform projection, Transform view, Point3D pos, int radius) {
@@ -605,7 +605,7 @@ public class GameView extends JPanel {
     }
 
     private int getZ(int x, int y) {
-        return map.getTileElevation(new Point2D(x, y));
+        return map.getTileElevation(x, y);
     }
 
     private RasterQuad getPointPolygon(Point3D point) {
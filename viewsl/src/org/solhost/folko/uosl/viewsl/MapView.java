@@ -28,7 +28,6 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import org.solhost.folko.uosl.libuosl.data.SLMap;
-import org.solhost.folko.uosl.libuosl.types.Point2D;
 
 public class MapView extends JPanel {
     private static final long serialVersionUID = -9081741694620720599L;
@@ -84,7 +83,7 @@ public class MapView extends JPanel {
         int x = (p.x / 2) * 4;
         int y = (p.y / 2) * 4;
         if( x >=0 && y >= 0 && x < 1024 && y < 1024) {
-            int z = map.getTileElevation(new Point2D(x, y));
+            int z = map.getTileElevation(x, y);
             coordsLabel.setText(String.format("Map Coordinates: %d, %d, %d", x, y, z));
         }
     }